@@ -14,6 +14,7 @@ GO
 CREATE TABLE dbo.message
 (
     id INT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+    messageId BIGINT NULL,
     name NVARCHAR(50) NOT NULL,
     email NVARCHAR(100) NOT NULL,
     content NVARCHAR(500) NOT NULL,
@@ -25,6 +26,14 @@ GO
 CREATE INDEX idx_message_createTime ON dbo.message(createTime DESC);
 GO
 
+-- idΨһд󻺳ָʱжǷд
+CREATE UNIQUE INDEX ux_message_messageId ON dbo.message(messageId) WHERE messageId IS NOT NULL;
+GO
+
+-- еıɾݣ
+-- ALTER TABLE dbo.message ADD messageId BIGINT NULL;
+-- CREATE UNIQUE INDEX ux_message_messageId ON dbo.message(messageId) WHERE messageId IS NOT NULL;
+
 -- עͣSQL Server 2022 ʹչԣ
 EXEC sp_addextendedproperty 
     @name = N'MS_Description', 
@@ -41,6 +50,14 @@ EXEC sp_addextendedproperty
     @level2type = N'COLUMN', @level2name = N'id';
 GO
 
+EXEC sp_addextendedproperty 
+    @name = N'MS_Description', 
+    @value = N'IDӦ÷䣬ΪʱIDΪID', 
+    @level0type = N'SCHEMA', @level0name = N'dbo', 
+    @level1type = N'TABLE', @level1name = N'message', 
+    @level2type = N'COLUMN', @level2name = N'messageId';
+GO
+
 EXEC sp_addextendedproperty 
     @name = N'MS_Description', 
     @value = N'', 
@@ -0,0 +1,33 @@
+package com.resume.message;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+// 字节缓冲池：复用固定大小的byte[]，请求处理时无需为每次编码/解码分配大块内存
+final class BufferPool {
+    static final BufferPool DEFAULT = new BufferPool(16 * 1024, 256);
+    
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> free;
+    
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+    
+    int bufferSize() {
+        return bufferSize;
+    }
+    
+    // 池为空时临时分配，不会阻塞
+    byte[] acquire() {
+        byte[] buffer = free.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+    
+    // 池已满时直接丢弃，交给GC回收
+    void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize) {
+            free.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.resume.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// 响应压缩：按Accept-Encoding协商gzip/deflate，小于阈值的响应不压缩
+final class Compression {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+    // 低于该字节数的响应直接发送；设为负数可关闭压缩
+    private static final int MIN_BYTES = SimpleMessageApplication.configInt("compression.minBytes", 1024);
+    
+    private Compression() {
+    }
+    
+    // 返回选中的编码，不压缩时返回null；q值相同时优先gzip
+    static String negotiate(String acceptEncoding, int length) {
+        if (acceptEncoding == null || MIN_BYTES < 0 || length < MIN_BYTES) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double wildcard = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (GZIP.equals(coding) || "x-gzip".equals(coding)) {
+                gzip = q;
+            } else if (DEFLATE.equals(coding)) {
+                deflate = q;
+            } else if ("*".equals(coding)) {
+                wildcard = q;
+            }
+        }
+        // 未显式列出的编码按通配符的q值处理
+        if (gzip < 0) {
+            gzip = wildcard;
+        }
+        if (deflate < 0) {
+            deflate = wildcard;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+    
+    static byte[] compress(byte[] body, String encoding) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (OutputStream out = wrap(buffer, encoding)) {
+            out.write(body);
+        }
+        return buffer.toByteArray();
+    }
+    
+    // HTTP中的deflate指zlib格式(RFC 1950)，DeflaterOutputStream默认即为该格式
+    static OutputStream wrap(OutputStream out, String encoding) throws IOException {
+        return GZIP.equals(encoding) ? new GZIPOutputStream(out) : new DeflaterOutputStream(out);
+    }
+}
@@ -0,0 +1,55 @@
+package com.resume.message;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// 留言创建时间的解析与格式化：留言只保存毫秒值，输出时才格式化为"yyyy-MM-dd HH:mm:ss"。
+// 格式化结果按秒缓存在一个小的直接映射表中，同一秒（以及最近访问过的秒）不再重复格式化；
+// 表项是不可变对象，多线程并发读写无需加锁，最坏情况只是重复格式化一次
+final class CreateTimeFormat {
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final int CACHE_SLOTS = 256;
+    private static final Formatted[] CACHE = new Formatted[CACHE_SLOTS];
+
+    private CreateTimeFormat() {
+    }
+
+    static String format(long millis) {
+        long second = Math.floorDiv(millis, 1000);
+        int slot = (int) (second & (CACHE_SLOTS - 1));
+        Formatted cached = CACHE[slot];
+        if (cached != null && cached.second == second) {
+            return cached.text;
+        }
+        String text = Instant.ofEpochSecond(second).atZone(ZONE).format(FORMAT);
+        CACHE[slot] = new Formatted(second, text);
+        return text;
+    }
+
+    // 兼容 "yyyy-MM-dd HH:mm:ss" 与旧数据中的ISO格式 "yyyy-MM-ddTHH:mm:ss"，无法解析时返回-1
+    static long parse(String text) {
+        if (text == null || text.isEmpty()) {
+            return -1;
+        }
+        try {
+            return LocalDateTime.parse(text.replace(' ', 'T'), DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+                    .atZone(ZONE).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static final class Formatted {
+        final long second;
+        final String text;
+
+        Formatted(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+// 本地文件存储：热区快照(messages.json，或messages.format=binary时的messages.bin) + 追加日志(messages.log) + 冷段目录。
+// 读请求通过MessageStore的不可变快照无锁读取；加载完成后只有日志写入线程修改存储
+final class FileMessageRepository implements MessageRepository {
+    // 当前格式的快照文件，以及切换格式前另一种格式的快照文件
+    private final Path snapshotFile;
+    private final Path otherSnapshotFile;
+    private final boolean binary;
+    private final MessageStore store = new MessageStore(1024);
+    private final MessageLog log;
+    private final MessageSegments segments;
+    private final GroupCommitWriter writer;
+    // 快照文件无法解析时为false，此时不再覆盖它，避免丢失其中的数据
+    private volatile boolean snapshotWritable = true;
+
+    FileMessageRepository(Path jsonSnapshotFile, Path binarySnapshotFile, Path logFile, Path segmentsDir) {
+        // 快照格式：json（默认，可直接查看和编辑）或binary（见MessageBinaryFormat，加载时不解析JSON）
+        this.binary = "binary".equalsIgnoreCase(SimpleMessageApplication.config("messages.format", "json"));
+        this.snapshotFile = binary ? binarySnapshotFile : jsonSnapshotFile;
+        this.otherSnapshotFile = binary ? jsonSnapshotFile : binarySnapshotFile;
+        this.log = new MessageLog(logFile);
+        // 热区保留的最新留言条数、每个冷段的条数
+        this.segments = new MessageSegments(segmentsDir,
+                SimpleMessageApplication.configInt("messages.hotWindow", 1000),
+                SimpleMessageApplication.configInt("messages.segmentSize", 1000));
+        // 日志写入线程，重放日志后启动；批量大小、提交间隔与触发快照的日志大小可配置
+        this.writer = new GroupCommitWriter(log, store, segments,
+                SimpleMessageApplication.configInt("log.batchSize", 256),
+                SimpleMessageApplication.configInt("log.commitIntervalMs", 1),
+                this::writeSnapshot,
+                SimpleMessageApplication.configInt("log.snapshotBytes", 4 * 1024 * 1024), null);
+    }
+
+    // 读取快照文件后重放追加日志，再读取冷段索引
+    @Override
+    public synchronized void open() {
+        if (store.snapshot() != null) {
+            return;
+        }
+
+        List<Message> loaded = null;
+        try {
+            // 尝试从快照文件加载；刚切换格式时当前格式的快照还不存在，读取另一种格式的快照，下次写快照时即完成转换
+            if (Files.exists(snapshotFile)) {
+                loaded = readSnapshot(snapshotFile, binary);
+            } else if (Files.exists(otherSnapshotFile)) {
+                loaded = readSnapshot(otherSnapshotFile, !binary);
+            }
+        } catch (Exception e) {
+            // 文件读取失败，继续使用内存初始化
+            System.err.println("无法从文件加载留言，将使用内存初始化: " + e.getMessage());
+            snapshotWritable = false;
+        }
+
+        List<Message> logged = replayLog();
+        List<MessageSegments.Segment> sealed = openSegments();
+        Message welcome = null;
+        if (loaded == null) {
+            loaded = new ArrayList<>();
+            if (logged.isEmpty() && sealed.isEmpty()) {
+                // 初始化默认留言，加载完成后写入日志保存
+                welcome = MessageRepository.welcomeMessage();
+            }
+        }
+
+        // 日志中已包含在快照里的留言（按id判断）不重复添加：
+        // 快照落盘后、日志清空前崩溃，或快照时仍在排队的留言，都会在两边各有一份
+        Set<String> snapshotIds = new HashSet<>();
+        for (Message message : loaded) {
+            snapshotIds.add(message.getId());
+        }
+        for (Message message : logged) {
+            if (!snapshotIds.contains(message.getId())) {
+                loaded.add(message);
+            }
+        }
+        // 封存冷段后、重写快照前崩溃时，快照或日志中会有已封存的留言
+        if (!sealed.isEmpty()) {
+            loaded = withoutSealed(loaded, sealed);
+        }
+        // 旧数据按写入顺序保存，由存储统一排序以支持游标分页
+        store.load(loaded, sealed);
+
+        // 此后日志写入线程是存储唯一的写者；日志打开失败时也启动，提交的留言仍会发布到内存
+        writer.start();
+        if (welcome != null) {
+            try {
+                awaitDurable(writer.submit(welcome));
+            } catch (IOException e) {
+                System.err.println("无法保存欢迎留言: " + e.getMessage());
+            }
+        }
+    }
+
+    // 交给日志写入线程：落盘后按提交顺序发布到内存，请求线程之间无需加锁
+    @Override
+    public void add(Message message) throws IOException {
+        snapshot();
+        awaitDurable(writer.submit(message));
+    }
+
+    @Override
+    public Page page(int limit, MessageCursor before, MessageCursor after) {
+        return snapshot().page(limit, before, after);
+    }
+
+    @Override
+    public Message find(MessageCursor cursor) {
+        return snapshot().find(cursor);
+    }
+
+    @Override
+    public List<Message> findAll(List<MessageCursor> cursors) {
+        return snapshot().findAll(cursors);
+    }
+
+    // 快照同时携带列表与版本号，二者必然一致
+    @Override
+    public long version() {
+        return snapshot().version;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        log.close();
+    }
+
+    private MessageStore.Snapshot snapshot() {
+        MessageStore.Snapshot snapshot = store.snapshot();
+        if (snapshot == null) {
+            open();
+            snapshot = store.snapshot();
+        }
+        return snapshot;
+    }
+
+    // 读取冷段索引；目录不可用时没有冷段，封存会在写入线程中失败并保留在内存
+    private List<MessageSegments.Segment> openSegments() {
+        try {
+            return segments.open();
+        } catch (IOException e) {
+            System.err.println("无法读取留言冷段目录: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    // 去除已封存在冷段中的留言；只有不比最新冷段更新的留言才需要查找，通常为空
+    private List<Message> withoutSealed(List<Message> messages, List<MessageSegments.Segment> sealed) {
+        MessageCursor newestSealed = sealed.get(0).newest;
+        List<Message> remaining = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            try {
+                if (newestSealed.compareTo(message) <= 0 && segments.contains(sealed, message)) {
+                    continue;
+                }
+            } catch (IOException e) {
+                System.err.println("无法读取留言冷段: " + e.getMessage());
+            }
+            remaining.add(message);
+        }
+        return remaining;
+    }
+
+    // 重放追加日志并打开用于后续写入；日志不可用时仅使用内存存储
+    private List<Message> replayLog() {
+        try {
+            List<Message> logged = log.replay();
+            log.open();
+            return logged;
+        } catch (IOException e) {
+            System.err.println("无法读取留言日志，新增留言将仅保存在内存中: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    // 写出热区快照：先写临时文件并落盘，再原子重命名覆盖旧快照，任何时刻磁盘上都有一份完整快照。
+    // 由日志写入线程调用，返回后日志即被清空；冷段中的留言已单独落盘，不写入快照
+    private void writeSnapshot() throws IOException {
+        if (!snapshotWritable) {
+            throw new IOException("快照文件无法解析，为避免覆盖原数据不再写入快照");
+        }
+        // 本方法与发布都在日志写入线程中执行，已写入日志的留言此时一定已发布
+        MessageStore.Snapshot current = store.snapshot();
+        if (current == null) {
+            throw new IOException("留言尚未加载");
+        }
+        List<Message> messages = current.subList(0, current.hotSize());
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (binary) {
+                try (OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024)) {
+                    MessageBinaryFormat.write(messages, out);
+                    out.flush();
+                    channel.force(true);
+                }
+            } else {
+                try (JsonStreamWriter json = new JsonStreamWriter(Channels.newOutputStream(channel))) {
+                    json.messages(messages);
+                }
+                channel.force(true);
+            }
+        }
+        Files.move(temp, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // 另一种格式的旧快照已过时，保留它会在切换回该格式时加载到旧数据
+        Files.deleteIfExists(otherSnapshotFile);
+        syncDirectory(snapshotFile.toAbsolutePath().getParent());
+    }
+
+    private static List<Message> readSnapshot(Path file, boolean binary) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        return binary ? MessageBinaryFormat.read(ByteBuffer.wrap(bytes)) : jsonToMessages(bytes);
+    }
+
+    // 重命名本身也要落盘
+    static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Windows不支持打开目录，重命名已由文件系统保证原子性
+        }
+    }
+
+    // 等待日志落盘。日志启动时未能打开时与原先一致，留言已发布到内存，只记录警告；
+    // 写入失败或写入线程已停止时留言没有发布，抛出IOException，请求返回错误
+    private static void awaitDurable(CompletableFuture<Boolean> durable) throws IOException {
+        try {
+            if (!durable.get()) {
+                System.err.println("留言日志不可用，无法保存留言到文件，数据仅保存在内存中");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待留言落盘时被中断");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException("无法保存留言: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // 将JSON数组（UTF-8字节）解析为留言列表
+    static List<Message> jsonToMessages(byte[] json) {
+        List<Message> messages = new ArrayList<>();
+        JsonReader reader = new JsonReader(json);
+        if (reader.isEnd()) {
+            return messages;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            messages.add(SimpleMessageApplication.readMessage(reader));
+        }
+        reader.endArray();
+        return messages;
+    }
+}
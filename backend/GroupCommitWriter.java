@@ -0,0 +1,242 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// 组提交写入线程：收集多个并发请求的新增留言，一次写入日志并force()落盘，再发布到内存存储并通知各请求完成。
+// 本线程是留言存储唯一的写者，请求线程只负责排队，读请求看到的留言都已落盘（日志未能打开、仅使用内存时除外）。
+// commitInterval越长、batchSize越大，单次落盘覆盖的请求越多，但单个请求的等待时间也越长。
+// 日志超过snapshotBytes后在本线程内写快照并清空日志，与追加写入互不交错，启动时的重放量因此有上限；
+// 热区超过阈值时同样在本线程内把最旧的留言封存为冷段，随后写快照，使快照文件只包含热区；
+// 不传入冷段存储时不封存。onCommit在每批发布后、通知请求完成前于本线程内调用，可以继续修改存储
+final class GroupCommitWriter implements Runnable {
+    // 写出持久化快照，正常返回即表示快照已落盘并包含所有已提交的留言
+    interface Snapshot {
+        void write() throws IOException;
+    }
+
+    private final MessageLog log;
+    private final MessageStore store;
+    private final MessageSegments segments;
+    private final int batchSize;
+    private final long commitIntervalNanos;
+    private final Snapshot snapshot;
+    private final long snapshotBytes;
+    private final Consumer<List<Message>> onCommit;
+    private long nextSnapshotAt;
+    private int nextSealAt;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong maxBatch = new AtomicLong();
+    private final AtomicLong syncMicros = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong snapshotMicros = new AtomicLong();
+    private volatile boolean running = true;
+
+    GroupCommitWriter(MessageLog log, MessageStore store, MessageSegments segments, int batchSize,
+                      int commitIntervalMillis, Snapshot snapshot, long snapshotBytes,
+                      Consumer<List<Message>> onCommit) {
+        this.log = log;
+        this.store = store;
+        this.segments = segments;
+        this.nextSealAt = segments == null ? Integer.MAX_VALUE : segments.sealThreshold();
+        this.batchSize = Math.max(1, batchSize);
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, commitIntervalMillis));
+        this.snapshot = snapshot;
+        // 非正数表示不做快照与压缩
+        this.snapshotBytes = snapshotBytes > 0 ? snapshotBytes : Long.MAX_VALUE;
+        this.nextSnapshotAt = this.snapshotBytes;
+        this.onCommit = onCommit;
+        this.thread = new Thread(this, "message-log-writer");
+        this.thread.setDaemon(true);
+        Metrics.register("messages.log.batches", batches::get);
+        Metrics.register("messages.log.maxBatch", maxBatch::get);
+        Metrics.register("messages.log.syncMicros", syncMicros::get);
+        Metrics.register("messages.log.queued", () -> queue.size());
+        Metrics.register("messages.snapshot.count", snapshots::get);
+        Metrics.register("messages.snapshot.micros", snapshotMicros::get);
+    }
+
+    void start() {
+        thread.start();
+        // 进程退出前把已排队的记录写完
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "message-log-writer-shutdown"));
+    }
+
+    // 提交一条新增留言，可在start()之前调用。返回的Future在其所在批次处理后完成：
+    // true表示已落盘并发布；false表示日志未打开（仅使用内存），只发布到了内存；
+    // 写入日志失败或写入线程已停止时以IOException异常完成，留言没有发布
+    CompletableFuture<Boolean> submit(Message message) {
+        Pending pending = new Pending(message);
+        // 与close()在同一把锁内检查并入队：停止之后不再入队，已入队的留言由写入线程或close()处理
+        synchronized (this) {
+            if (running) {
+                queue.add(pending);
+                return pending.future;
+            }
+        }
+        pending.future.completeExceptionally(new IOException("留言日志写入线程已停止"));
+        return pending.future;
+    }
+
+    void close() {
+        synchronized (this) {
+            running = false;
+        }
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 写入线程未在时限内处理完（或未启动）时，取走剩余的留言并通知请求失败，不再写入
+        List<Pending> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        for (Pending pending : abandoned) {
+            pending.future.completeExceptionally(new IOException("留言日志写入线程已停止"));
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        // 上次运行留下的日志可能已经很大
+        maybeSeal();
+        maybeSnapshot();
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                commit(batch);
+                maybeSeal();
+                maybeSnapshot();
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // 在提交间隔内继续收集，直到达到批量上限
+    private void collect(List<Pending> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + commitIntervalNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            // 日志记录与之后的响应共用同一份编码结果
+            pending.message.preEncode();
+            messages.add(pending.message);
+        }
+        boolean logOpen = log.isOpen();
+        Exception failure = null;
+        try {
+            long start = System.nanoTime();
+            log.appendAll(messages);
+            syncMicros.addAndGet(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            batches.incrementAndGet();
+            if (batch.size() > maxBatch.get()) {
+                maxBatch.set(batch.size());
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+        if (failure != null && logOpen) {
+            // 写入失败的留言不发布，请求返回错误；日志已回退到写入前的大小
+            for (Pending pending : batch) {
+                pending.future.completeExceptionally(failure);
+            }
+            return;
+        }
+        // 日志启动时未能打开：与只有内存存储的环境一致，仍发布到内存，由请求方记录警告
+        store.addAll(messages);
+        if (onCommit != null) {
+            try {
+                onCommit.accept(messages);
+            } catch (RuntimeException e) {
+                System.err.println("留言提交后的处理失败: " + e.getMessage());
+            }
+        }
+        for (Pending pending : batch) {
+            pending.future.complete(failure == null);
+        }
+    }
+
+    // 热区达到阈值时把最旧的一段封存为冷段，可能连续封存多段（例如旧版本留下的大快照）；
+    // 封存失败则留言继续保存在热区，等热区再增长一段后重试
+    private void maybeSeal() {
+        MessageStore.Snapshot current = store.snapshot();
+        while (current != null && current.hotSize() >= nextSealAt) {
+            int count = segments.segmentSize();
+            int hot = current.hotSize();
+            try {
+                // 热区最旧的count条，按新到旧排列
+                store.seal(count, segments.seal(current.subList(hot - count, hot)));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("封存留言冷段失败，留言继续保存在内存中: " + e.getMessage());
+                nextSealAt = hot + count;
+                return;
+            }
+            nextSealAt = segments.sealThreshold();
+            // 快照中仍有已封存的留言，立即重写（未关闭快照时）
+            if (snapshotBytes != Long.MAX_VALUE) {
+                nextSnapshotAt = 0;
+            }
+            current = store.snapshot();
+        }
+    }
+
+    // 日志达到阈值时写快照并清空日志；快照失败则保留日志，等日志再增长一个阈值后重试
+    private void maybeSnapshot() {
+        if (log.size() < nextSnapshotAt) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            snapshot.write();
+            // 快照已落盘后才清空日志；两步之间崩溃只会导致重放重复记录，按id去重即可
+            log.truncate();
+            snapshots.incrementAndGet();
+            snapshotMicros.addAndGet(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            nextSnapshotAt = snapshotBytes;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("写入留言快照失败，保留追加日志: " + e.getMessage());
+            nextSnapshotAt = log.size() + snapshotBytes;
+        }
+    }
+
+    private static final class Pending {
+        final Message message;
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        Pending(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.resume.message;
+
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+
+// HTTP传输层抽象：可选JDK内置HttpServer或基于NIO Selector的实现，处理器逻辑保持不变
+interface HttpTransport {
+    // 注册路径处理器，按最长前缀匹配（与HttpServer.createContext语义一致）
+    void createContext(String path, HttpHandler handler);
+    
+    void start() throws IOException;
+    
+    void stop();
+}
@@ -0,0 +1,147 @@
+package com.resume.message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 有界JDBC连接池：最多maxSize个连接，取不到时等待acquireTimeout后失败，而不是无限创建连接。
+// 每个连接缓存自己的PreparedStatement，同一条SQL只在该连接上预编译一次
+final class JdbcConnectionPool implements Closeable {
+    // 在一个连接上执行的操作
+    interface Work<T> {
+        T run(PooledConnection connection) throws SQLException;
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Semaphore permits;
+    private final long acquireTimeoutMillis;
+    // 后进先出，优先复用最近使用过的连接
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private volatile boolean closed;
+
+    JdbcConnectionPool(String url, String user, String password, int maxSize, long acquireTimeoutMillis) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.permits = new Semaphore(Math.max(1, maxSize), true);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        Metrics.register("jdbc.pool.idle", () -> idle.size());
+        Metrics.register("jdbc.pool.created", created::get);
+        Metrics.register("jdbc.pool.discarded", discarded::get);
+        Metrics.register("jdbc.pool.timeouts", timeouts::get);
+    }
+
+    // 借出一个连接执行操作后归还；出错且连接已不可用时丢弃该连接
+    <T> T execute(Work<T> work) throws IOException {
+        if (closed) {
+            throw new IOException("数据库连接池已关闭");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new IOException("数据库连接池繁忙，等待连接超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待数据库连接时被中断");
+        }
+        PooledConnection connection = null;
+        boolean healthy = false;
+        try {
+            connection = idle.pollFirst();
+            if (connection == null) {
+                connection = new PooledConnection(user == null
+                        ? DriverManager.getConnection(url)
+                        : DriverManager.getConnection(url, user, password));
+                created.incrementAndGet();
+            }
+            T result = work.run(connection);
+            healthy = true;
+            return result;
+        } catch (SQLException e) {
+            // 约束冲突等语句级错误不影响连接本身
+            healthy = connection != null && connection.isValid();
+            throw new IOException("数据库操作失败: " + e.getMessage(), e);
+        } finally {
+            if (connection != null) {
+                if (healthy && !closed) {
+                    idle.addFirst(connection);
+                } else {
+                    discarded.incrementAndGet();
+                    connection.close();
+                }
+            }
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    static final class PooledConnection {
+        final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        // 取得该连接上缓存的预编译语句；同一连接同一时刻只被一个线程使用，无需加锁
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        // 需要返回自增主键的语句单独缓存
+        PreparedStatement prepareReturningKeys(String sql) throws SQLException {
+            String key = "keys:" + sql;
+            PreparedStatement statement = statements.get(key);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                statements.put(key, statement);
+            }
+            return statement;
+        }
+
+        private boolean isValid() {
+            try {
+                return connection.isValid(1);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private void close() {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // 连接已不可用，忽略
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// 数据库存储：SQLQuery1.sql中的dbo.message表（createTime上有idx_message_createTime索引）。
+// 留言id保存在messageId列（唯一），与内存、文件存储中的id相同；没有messageId的旧记录以自增id作为留言id。
+// 分页使用(createTime, id)键集查询，先按createTime范围定位索引再比较id，不使用OFFSET跳过行；
+// SQL只使用标准的OFFSET/FETCH语法，SQL Server 2012+及常见嵌入式数据库均可执行。
+// 游标时间显式转换为DATETIME再比较：SQL Server 2016+把Timestamp参数当作datetime2，
+// 以.003/.007毫秒结尾的DATETIME值与之比较时不相等，翻页边界上的行会重复或遗漏
+final class JdbcMessageRepository implements MessageRepository {
+    // 批量查找时单条SQL最多包含的游标数（每个游标两个参数，SQL Server单条语句最多2100个参数）
+    private static final int FIND_BATCH = 256;
+
+    private final JdbcConnectionPool pool;
+    private final String insertSql;
+    private final String firstPageSql;
+    private final String olderPageSql;
+    private final String newerPageSql;
+    private final String existsSql;
+    private final String findSql;
+    // 批量查找的SQL由这三段与两个IN列表拼成
+    private final String findAllPrefix;
+    private final String findAllInfix;
+    private final String findAllSuffix;
+
+    JdbcMessageRepository(JdbcConnectionPool pool, String table) {
+        this.pool = pool;
+        String id = "COALESCE(messageId, id)";
+        String select = "SELECT " + id + ", name, email, content, createTime FROM " + table;
+        String fetch = " OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+        this.insertSql = "INSERT INTO " + table
+                + " (messageId, name, email, content, createTime) VALUES (?, ?, ?, ?, ?)";
+        this.firstPageSql = select + " ORDER BY createTime DESC, " + id + " DESC" + fetch;
+        this.olderPageSql = select + " WHERE createTime <= CAST(? AS DATETIME)"
+                + " AND (createTime < CAST(? AS DATETIME) OR " + id + " < ?)"
+                + " ORDER BY createTime DESC, " + id + " DESC" + fetch;
+        this.newerPageSql = select + " WHERE createTime >= CAST(? AS DATETIME)"
+                + " AND (createTime > CAST(? AS DATETIME) OR " + id + " > ?)"
+                + " ORDER BY createTime ASC, " + id + " ASC" + fetch;
+        this.existsSql = "SELECT COUNT(*) FROM " + table + " WHERE messageId = ?";
+        this.findSql = select + " WHERE createTime = CAST(? AS DATETIME) AND " + id + " = ?";
+        this.findAllPrefix = select + " WHERE createTime IN (";
+        this.findAllInfix = ") AND " + id + " IN (";
+        this.findAllSuffix = ") ORDER BY createTime DESC, " + id + " DESC";
+    }
+
+    // 启动时执行一次查询，连接或表结构有问题时尽早失败
+    @Override
+    public void open() throws IOException {
+        page(1, null, null);
+    }
+
+    // 保存调用方分配的id；留言没有id时由数据库自增列分配，写回留言对象
+    @Override
+    public void add(Message message) throws IOException {
+        long id = pool.execute(connection -> {
+            PreparedStatement insert = connection.prepareReturningKeys(insertSql);
+            bindInsert(insert, message);
+            insert.executeUpdate();
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                return keys.next() ? keys.getLong(1) : -1L;
+            }
+        });
+        if (message.getId() == null && id >= 0) {
+            message.setId(String.valueOf(id));
+        }
+    }
+
+    // 在一个事务中批量插入，整批成功或整批回滚
+    void insertAll(List<Message> messages) throws IOException {
+        pool.execute(connection -> {
+            Connection jdbc = connection.connection;
+            PreparedStatement insert = connection.prepare(insertSql);
+            jdbc.setAutoCommit(false);
+            try {
+                for (Message message : messages) {
+                    bindInsert(insert, message);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                jdbc.commit();
+                return null;
+            } catch (SQLException e) {
+                insert.clearBatch();
+                jdbc.rollback();
+                throw e;
+            } finally {
+                jdbc.setAutoCommit(true);
+            }
+        });
+    }
+
+    // 数据库中是否已有该id的留言；用于恢复时判断一条记录是否已经写入过。
+    // 按id而不是按内容判断，同一用户在同一秒内发出的两条相同留言都会保留
+    boolean exists(Message message) throws IOException {
+        long id = parseId(message.getId());
+        return pool.execute(connection -> {
+            PreparedStatement query = connection.prepare(existsSql);
+            query.setLong(1, id);
+            try (ResultSet rows = query.executeQuery()) {
+                return rows.next() && rows.getLong(1) > 0;
+            }
+        });
+    }
+
+    @Override
+    public Page page(int limit, MessageCursor before, MessageCursor after) throws IOException {
+        MessageCursor cursor = before != null ? before : after;
+        long cursorId = cursor == null ? 0 : parseId(cursor.id);
+        return pool.execute(connection -> {
+            PreparedStatement query;
+            if (cursor == null) {
+                query = connection.prepare(firstPageSql);
+                query.setInt(1, limit + 1);
+            } else {
+                query = connection.prepare(before != null ? olderPageSql : newerPageSql);
+                Timestamp time = new Timestamp(cursor.createTime);
+                query.setTimestamp(1, time);
+                query.setTimestamp(2, time);
+                query.setLong(3, cursorId);
+                // 多取一条用于判断翻页方向上是否还有留言
+                query.setInt(4, limit + 1);
+            }
+            List<Message> messages = new ArrayList<>(limit + 1);
+            try (ResultSet rows = query.executeQuery()) {
+                while (rows.next()) {
+                    messages.add(readRow(rows));
+                }
+            }
+            boolean more = messages.size() > limit;
+            List<Message> page = more ? messages.subList(0, limit) : messages;
+            boolean found = !page.isEmpty();
+            if (after != null) {
+                // 按时间正序取出紧邻游标的较新留言，翻转为新到旧；游标本身更旧，因此非空时总有更旧的留言
+                Collections.reverse(page);
+                return new Page(page, found, more);
+            }
+            // 带before游标时游标本身更新
+            return new Page(page, more, found && before != null);
+        });
+    }
+
+    @Override
+    public Message find(MessageCursor cursor) throws IOException {
+        long id = parseId(cursor.id);
+        return pool.execute(connection -> {
+            PreparedStatement query = connection.prepare(findSql);
+            query.setTimestamp(1, new Timestamp(cursor.createTime));
+            query.setLong(2, id);
+            try (ResultSet rows = query.executeQuery()) {
+                return rows.next() ? readRow(rows) : null;
+            }
+        });
+    }
+
+    // 一次查询取回一批游标：createTime与id各一个IN列表，由createTime索引定位，
+    // 两个列表交叉匹配到的多余行在结果中按游标精确比较排除
+    @Override
+    public List<Message> findAll(List<MessageCursor> cursors) throws IOException {
+        List<Message> found = new ArrayList<>(cursors.size());
+        for (int from = 0; from < cursors.size(); from += FIND_BATCH) {
+            found.addAll(findBatch(cursors.subList(from, Math.min(cursors.size(), from + FIND_BATCH))));
+        }
+        return found;
+    }
+
+    // 参数个数补齐到2的幂（重复最后一个游标），每个连接上缓存的批量查找语句只有少数几种
+    private List<Message> findBatch(List<MessageCursor> cursors) throws IOException {
+        long[] ids = new long[cursors.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = parseId(cursors.get(i).id);
+        }
+        int slots = 1;
+        while (slots < ids.length) {
+            slots <<= 1;
+        }
+        String sql = findAllSql(slots);
+        int bound = slots;
+        return pool.execute(connection -> {
+            PreparedStatement query = connection.prepare(sql);
+            for (int i = 0; i < bound; i++) {
+                int cursor = Math.min(i, ids.length - 1);
+                query.setTimestamp(i + 1, new Timestamp(cursors.get(cursor).createTime));
+                query.setLong(bound + i + 1, ids[cursor]);
+            }
+            List<Message> rows = new ArrayList<>();
+            try (ResultSet result = query.executeQuery()) {
+                while (result.next()) {
+                    rows.add(readRow(result));
+                }
+            }
+            // 结果已按新到旧排序，二分查找每个游标
+            List<Message> found = new ArrayList<>(ids.length);
+            for (MessageCursor cursor : cursors) {
+                int index = MessageCursor.firstNotNewerThan(rows, cursor);
+                found.add(index < rows.size() && cursor.compareTo(rows.get(index)) == 0 ? rows.get(index) : null);
+            }
+            return found;
+        });
+    }
+
+    private String findAllSql(int slots) {
+        StringBuilder sql = new StringBuilder(findAllPrefix);
+        for (int i = 0; i < slots; i++) {
+            sql.append(i == 0 ? "CAST(? AS DATETIME)" : ", CAST(? AS DATETIME)");
+        }
+        sql.append(findAllInfix);
+        for (int i = 0; i < slots; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(findAllSuffix).toString();
+    }
+
+    // 其他实例或工具也可能写入数据库，不做响应缓存
+    @Override
+    public long version() {
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    // 是否为只与这条数据有关的错误：超长、格式错误（SQLState 22）或违反约束（SQLState 23）等，
+    // 重试不会成功；连接中断、连接池超时等其他错误可能恢复。批量插入失败时真正的原因在getNextException中
+    static boolean isDataError(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IllegalArgumentException) {
+                // bindInsert中无法解析的留言id
+                return true;
+            }
+            for (SQLException e = cause instanceof SQLException ? (SQLException) cause : null; e != null;
+                 e = e.getNextException()) {
+                String state = e.getSQLState();
+                if (e instanceof SQLDataException || e instanceof SQLIntegrityConstraintViolationException
+                        || (state != null && (state.startsWith("22") || state.startsWith("23")))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void bindInsert(PreparedStatement insert, Message message) throws SQLException {
+        if (message.getId() == null) {
+            insert.setNull(1, Types.BIGINT);
+        } else {
+            insert.setLong(1, parseId(message.getId()));
+        }
+        insert.setString(2, message.getName());
+        insert.setString(3, message.getEmail());
+        insert.setString(4, message.getContent());
+        insert.setTimestamp(5, new Timestamp(message.getCreateTimeMillis()));
+    }
+
+    private static Message readRow(ResultSet rows) throws SQLException {
+        Message message = new Message();
+        message.setId(String.valueOf(rows.getLong(1)));
+        message.setName(rows.getString(2));
+        message.setEmail(rows.getString(3));
+        message.setContent(rows.getString(4));
+        // 保留数据库中的毫秒，游标与ORDER BY的排序保持一致
+        message.setCreateTimeMillis(rows.getTimestamp(5).getTime());
+        return message;
+    }
+
+    // 数据库中的id是整数，其他格式的游标或留言id不可能来自本后端
+    private static long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("游标无效: " + id);
+        }
+    }
+}
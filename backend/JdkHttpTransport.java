@@ -0,0 +1,34 @@
+package com.resume.message;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+// 基于com.sun.net.httpserver.HttpServer的传输层（默认实现）
+class JdkHttpTransport implements HttpTransport {
+    private final HttpServer server;
+    
+    JdkHttpTransport(InetSocketAddress address, Executor executor) throws IOException {
+        server = HttpServer.create(address, 0);
+        // executor为null时沿用HttpServer自带的单个分发线程
+        server.setExecutor(executor);
+    }
+    
+    @Override
+    public void createContext(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+    
+    @Override
+    public void start() {
+        server.start();
+    }
+    
+    @Override
+    public void stop() {
+        server.stop(0);
+    }
+}
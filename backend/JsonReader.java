@@ -0,0 +1,296 @@
+package com.resume.message;
+
+import java.nio.charset.StandardCharsets;
+
+// 单遍JSON解析器：直接在UTF-8字节上按需读取token，完整支持转义与\\uXXXX（含代理对），
+// 字符串解码复用内部char缓冲区，除结果String外不产生中间对象
+final class JsonReader {
+    private final byte[] data;
+    private final int end;
+    private int pos;
+    // 当前对象/数组中还没有读过元素：此时元素前不能有逗号，之后的每个元素前必须有逗号
+    private boolean first;
+    private char[] scratch = new char[64];
+
+    JsonReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    JsonReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.pos = offset;
+        this.end = offset + length;
+        // 跳过UTF-8 BOM
+        if (length >= 3 && (data[offset] & 0xFF) == 0xEF && (data[offset + 1] & 0xFF) == 0xBB
+                && (data[offset + 2] & 0xFF) == 0xBF) {
+            pos += 3;
+        }
+    }
+
+    void beginObject() {
+        expect('{');
+        first = true;
+    }
+
+    // 结束后回到外层，外层至少已有这一个元素
+    void endObject() {
+        expect('}');
+        first = false;
+    }
+
+    void beginArray() {
+        expect('[');
+        first = true;
+    }
+
+    void endArray() {
+        expect(']');
+        first = false;
+    }
+
+    // 当前对象/数组中是否还有元素，会消费元素之间的逗号；每个元素只能调用一次。
+    // 元素之间缺少逗号、第一个元素前或结束符前多出逗号时抛出异常
+    boolean hasNext() {
+        int c = peek();
+        if (c == '}' || c == ']' || c == -1) {
+            return false;
+        }
+        if (!first) {
+            if (c != ',') {
+                throw error("期望 ','");
+            }
+            pos++;
+            c = peek();
+            if (c == '}' || c == ']') {
+                throw error("结束符前多出 ','");
+            }
+        }
+        first = false;
+        return c != -1;
+    }
+
+    // 下一个值是否为对象或数组
+    boolean peekStructure() {
+        int c = peek();
+        return c == '{' || c == '[';
+    }
+
+    String nextName() {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    String nextString() {
+        expect('"');
+        int start = pos;
+        // 快速路径：无转义的纯ASCII字符串直接构造
+        while (pos < end) {
+            byte b = data[pos];
+            if (b == '"') {
+                pos++;
+                return new String(data, start, pos - 1 - start, StandardCharsets.ISO_8859_1);
+            }
+            if (b == '\\' || b < 0) {
+                break;
+            }
+            pos++;
+        }
+        return decodeString(start);
+    }
+
+    // 读取标量值并转为字符串：字符串原样返回，数字/布尔值返回字面量，null返回null
+    String nextValueAsString() {
+        int c = peek();
+        if (c == '"') {
+            return nextString();
+        }
+        if (c == 'n') {
+            literal("null");
+            return null;
+        }
+        if (c == 't') {
+            literal("true");
+            return "true";
+        }
+        if (c == 'f') {
+            literal("false");
+            return "false";
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            int start = pos;
+            while (pos < end && isNumberChar(data[pos])) {
+                pos++;
+            }
+            return new String(data, start, pos - start, StandardCharsets.ISO_8859_1);
+        }
+        throw error("期望值");
+    }
+
+    // 跳过任意值（含嵌套对象和数组）
+    void skipValue() {
+        int c = peek();
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < end) {
+                byte b = data[pos];
+                if (b == '"') {
+                    skipString();
+                    continue;
+                }
+                pos++;
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if ((b == '}' || b == ']') && --depth == 0) {
+                    return;
+                }
+            }
+            throw error("对象或数组未结束");
+        }
+        nextValueAsString();
+    }
+
+    // 是否已读到末尾（仅剩空白）
+    boolean isEnd() {
+        return peek() == -1;
+    }
+
+    private String decodeString(int start) {
+        pos = start;
+        int length = 0;
+        while (true) {
+            if (pos >= end) {
+                throw error("字符串未结束");
+            }
+            int b = data[pos++] & 0xFF;
+            if (b == '"') {
+                return new String(scratch, 0, length);
+            }
+            if (length + 2 > scratch.length) {
+                char[] bigger = new char[scratch.length * 2];
+                System.arraycopy(scratch, 0, bigger, 0, length);
+                scratch = bigger;
+            }
+            if (b == '\\') {
+                scratch[length++] = readEscape();
+            } else if (b < 0x80) {
+                scratch[length++] = (char) b;
+            } else {
+                int codePoint = readUtf8(b);
+                if (codePoint >= 0x10000) {
+                    scratch[length++] = Character.highSurrogate(codePoint);
+                    scratch[length++] = Character.lowSurrogate(codePoint);
+                } else {
+                    scratch[length++] = (char) codePoint;
+                }
+            }
+        }
+    }
+
+    private char readEscape() {
+        if (pos >= end) {
+            throw error("转义序列不完整");
+        }
+        byte b = data[pos++];
+        switch (b) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                if (pos + 4 > end) {
+                    throw error("\\u转义不完整");
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(data[pos++], 16);
+                    if (digit < 0) {
+                        throw error("\\u转义包含非十六进制字符");
+                    }
+                    value = (value << 4) | digit;
+                }
+                // 代理对由两个连续的\\u转义分别写入，合并后即为完整字符
+                return (char) value;
+            default:
+                throw error("未知转义字符");
+        }
+    }
+
+    // 解码一个多字节UTF-8序列，非法序列替换为U+FFFD
+    private int readUtf8(int first) {
+        int extra;
+        int codePoint;
+        if (first >= 0xF0 && first <= 0xF4) {
+            extra = 3;
+            codePoint = first & 0x07;
+        } else if (first >= 0xE0 && first < 0xF0) {
+            extra = 2;
+            codePoint = first & 0x0F;
+        } else if (first >= 0xC2 && first < 0xE0) {
+            extra = 1;
+            codePoint = first & 0x1F;
+        } else {
+            return 0xFFFD;
+        }
+        for (int i = 0; i < extra; i++) {
+            if (pos >= end || (data[pos] & 0xC0) != 0x80) {
+                return 0xFFFD;
+            }
+            codePoint = (codePoint << 6) | (data[pos++] & 0x3F);
+        }
+        return codePoint > 0x10FFFF ? 0xFFFD : codePoint;
+    }
+
+    private void skipString() {
+        pos++;
+        while (pos < end) {
+            byte b = data[pos++];
+            if (b == '\\') {
+                pos++;
+            } else if (b == '"') {
+                return;
+            }
+        }
+        throw error("字符串未结束");
+    }
+
+    private void literal(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (pos >= end || data[pos] != word.charAt(i)) {
+                throw error("期望 " + word);
+            }
+            pos++;
+        }
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("期望 '" + c + "'");
+        }
+        pos++;
+    }
+
+    // 跳过空白并返回下一个字节（不消费），到达末尾返回-1
+    private int peek() {
+        while (pos < end) {
+            byte b = data[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private static boolean isNumberChar(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("JSON格式错误（位置 " + pos + "）: " + message);
+    }
+}
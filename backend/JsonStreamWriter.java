@@ -0,0 +1,230 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+// 流式JSON写入器：直接把字符编码为UTF-8写入池化缓冲区，缓冲区写满时输出到目标流，
+// 内存占用与列表长度无关
+final class JsonStreamWriter implements Closeable {
+    // ASCII字符的转义方式：0表示原样输出，'u'表示反斜杠u00加两位十六进制，其余为反斜杠之后的字符
+    private static final byte[] ESCAPES = new byte[0x80];
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = 'u';
+        }
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\t'] = 't';
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+    }
+    
+    private final OutputStream out;
+    private byte[] buffer;
+    private int count;
+    private boolean drained;
+    
+    JsonStreamWriter(OutputStream out) {
+        this.out = out;
+        this.buffer = BufferPool.DEFAULT.acquire();
+    }
+    
+    // 写入不需要转义的ASCII片段（字段名、标点等）
+    JsonStreamWriter raw(String ascii) throws IOException {
+        for (int i = 0; i < ascii.length(); i++) {
+            writeByte(ascii.charAt(i));
+        }
+        return this;
+    }
+    
+    // 写入带引号的字符串值，null按空字符串处理（与原escapeJson一致）。
+    // 查表判断ASCII字符是否需要转义：连续不需要转义的字符成段编码写入缓冲区，控制字符按JSON要求转义为反斜杠u00XX
+    JsonStreamWriter string(String value) throws IOException {
+        writeByte('"');
+        if (value != null) {
+            int length = value.length();
+            int i = 0;
+            while (i < length) {
+                char c = value.charAt(i);
+                if (c < 0x80 && ESCAPES[c] != 0) {
+                    writeEscape(c);
+                    i++;
+                } else {
+                    i = encodeRun(value, i, length);
+                }
+            }
+        }
+        writeByte('"');
+        return this;
+    }
+    
+    // 已有编码结果（如内存映射的冷段记录）时直接复制字节
+    JsonStreamWriter message(Message message) throws IOException {
+        ByteBuffer encoded = message.getEncoded();
+        if (encoded != null) {
+            return bytes(encoded);
+        }
+        raw("{\"id\":").string(message.getId());
+        raw(",\"name\":").string(message.getName());
+        raw(",\"email\":").string(message.getEmail());
+        raw(",\"content\":").string(message.getContent());
+        raw(",\"createTime\":").string(message.getCreateTime());
+        return raw("}");
+    }
+    
+    // 单条留言的JSON对象字节；写入内存不会出现IO错误
+    static byte[] encode(Message message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (JsonStreamWriter writer = new JsonStreamWriter(out)) {
+            writer.message(message);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+    
+    // 写入已编码的JSON片段，可以来自堆外或内存映射的缓冲区
+    JsonStreamWriter bytes(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            if (count == buffer.length) {
+                flush();
+            }
+            int n = Math.min(source.remaining(), buffer.length - count);
+            source.get(buffer, count, n);
+            count += n;
+        }
+        return this;
+    }
+    
+    JsonStreamWriter messages(List<Message> messages) throws IOException {
+        writeByte('[');
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                writeByte(',');
+            }
+            message(messages.get(i));
+        }
+        writeByte(']');
+        return this;
+    }
+    
+    // 是否已有数据输出到目标流（即内容超过了一个缓冲区）
+    boolean drained() {
+        return drained;
+    }
+    
+    // 尚未输出的缓冲内容副本，仅在drained()为false时代表完整结果
+    byte[] bufferedBytes() {
+        return Arrays.copyOf(buffer, count);
+    }
+    
+    // 丢弃缓冲内容并归还缓冲区，不再写入目标流
+    void discard() {
+        count = 0;
+        release();
+    }
+    
+    void flush() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            drained = true;
+            count = 0;
+        }
+    }
+    
+    // 输出剩余内容并归还缓冲区；目标流由调用方关闭
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            release();
+        }
+    }
+    
+    private void release() {
+        BufferPool.DEFAULT.release(buffer);
+        buffer = null;
+    }
+    
+    // 从from开始连续编码不需要转义的字符，直接写入缓冲区：每个字符最多4字节，只在进入时检查一次剩余空间，
+    // 遇到需要转义的字符或缓冲区将满时返回下一个下标
+    private int encodeRun(String value, int from, int length) throws IOException {
+        ensureRoom(4);
+        byte[] target = buffer;
+        int position = count;
+        int limit = target.length - 4;
+        int i = from;
+        while (i < length && position <= limit) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (ESCAPES[c] != 0) {
+                    break;
+                }
+                target[position++] = (byte) c;
+            } else if (c < 0x800) {
+                target[position++] = (byte) (0xC0 | (c >> 6));
+                target[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                // 代理对合并为4字节序列
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                target[position++] = (byte) (0xF0 | (codePoint >> 18));
+                target[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                target[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                target[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 孤立的代理字符无法编码，与String.getBytes一致替换为'?'
+                target[position++] = '?';
+            } else {
+                target[position++] = (byte) (0xE0 | (c >> 12));
+                target[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                target[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+            i++;
+        }
+        count = position;
+        return i;
+    }
+    
+    private void writeEscape(char c) throws IOException {
+        ensureRoom(6);
+        buffer[count++] = '\\';
+        byte escape = ESCAPES[c];
+        buffer[count++] = escape;
+        if (escape == 'u') {
+            buffer[count++] = '0';
+            buffer[count++] = '0';
+            buffer[count++] = HEX[c >> 4];
+            buffer[count++] = HEX[c & 0xF];
+        }
+    }
+    
+    // 缓冲区剩余空间不足n字节时先输出，之后可以直接写入n字节
+    private void ensureRoom(int n) throws IOException {
+        if (buffer.length - count < n) {
+            flush();
+        }
+    }
+    
+    private void writeByte(int b) throws IOException {
+        if (count == buffer.length) {
+            flush();
+        }
+        buffer[count++] = (byte) b;
+    }
+}
@@ -0,0 +1,65 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.util.Collections;
+import java.util.List;
+
+// 仅内存存储：用于阿里云函数计算等没有持久化磁盘的环境，实例重启后数据重置。
+// 只保留最新的messages.hotWindow条，更旧的留言被丢弃，内存占用不随留言总数增长
+final class MemoryMessageRepository implements MessageRepository {
+    private final int hotWindow = Math.max(1, SimpleMessageApplication.configInt("messages.hotWindow", 1000));
+    private final MessageStore store = new MessageStore(Math.min(hotWindow + 1, 1024));
+
+    @Override
+    public synchronized void open() {
+        if (store.snapshot() == null) {
+            store.load(Collections.singletonList(MessageRepository.welcomeMessage()),
+                    Collections.<MessageSegments.Segment>emptyList());
+        }
+    }
+
+    // 加锁保证MessageStore只有一个写者
+    @Override
+    public synchronized void add(Message message) {
+        open();
+        store.addAll(Collections.singletonList(message));
+        int excess = store.snapshot().size() - hotWindow;
+        if (excess > 0) {
+            store.trim(excess);
+        }
+    }
+
+    @Override
+    public Page page(int limit, MessageCursor before, MessageCursor after) {
+        return snapshot().page(limit, before, after);
+    }
+
+    @Override
+    public Message find(MessageCursor cursor) {
+        return snapshot().find(cursor);
+    }
+
+    @Override
+    public List<Message> findAll(List<MessageCursor> cursors) {
+        return snapshot().findAll(cursors);
+    }
+
+    @Override
+    public long version() {
+        return snapshot().version;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private MessageStore.Snapshot snapshot() {
+        MessageStore.Snapshot snapshot = store.snapshot();
+        if (snapshot == null) {
+            open();
+            snapshot = store.snapshot();
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,244 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+// 留言的二进制文件格式，读取时不需要解析JSON，可以直接内存映射后按索引访问任意一条：
+// [4字节魔数][1字节版本][记录...][索引：各记录偏移(4字节)...][4字节条数][8字节索引位置][4字节魔数]
+// 记录为[varint负载长度][4字节负载CRC32][负载]，负载为[8字节createTime毫秒][id][name][email][content][createTime文本]，
+// 字符串字段为[varint(字节数+1)][UTF-8]，0表示null；createTime文本只在毫秒值无效（旧数据无法解析）时保存
+final class MessageBinaryFormat {
+    private static final int MAGIC = 0x4D534742;
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 5;
+    private static final int TRAILER_BYTES = 16;
+
+    private MessageBinaryFormat() {
+    }
+
+    // 按列表顺序写出全部留言与索引，不关闭out
+    static void write(List<Message> messages, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        int[] offsets = new int[messages.size()];
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = data.size();
+            payload.reset();
+            encodePayload(messages.get(i), payload);
+            crc.reset();
+            crc.update(payload.toByteArray(), 0, payload.size());
+            writeVarint(data, payload.size());
+            data.writeInt((int) crc.getValue());
+            payload.writeTo(data);
+        }
+        long indexOffset = data.size();
+        for (int offset : offsets) {
+            data.writeInt(offset);
+        }
+        data.writeInt(offsets.length);
+        data.writeLong(indexOffset);
+        data.writeInt(MAGIC);
+        data.flush();
+    }
+
+    // 校验文件头与尾部后返回按索引访问的记录视图，不读取任何记录；buffer可以是内存映射
+    static Records open(ByteBuffer buffer) throws IOException {
+        int limit = buffer.limit();
+        if (limit < HEADER_BYTES + TRAILER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(limit - 4) != MAGIC) {
+            throw new IOException("不是留言二进制文件");
+        }
+        if (buffer.get(4) != VERSION) {
+            throw new IOException("不支持的留言二进制文件版本: " + buffer.get(4));
+        }
+        int count = buffer.getInt(limit - TRAILER_BYTES);
+        long indexOffset = buffer.getLong(limit - 12);
+        if (count < 0 || indexOffset < HEADER_BYTES || indexOffset + 4L * count != limit - TRAILER_BYTES) {
+            throw new IOException("留言二进制文件索引损坏");
+        }
+        return new Records(buffer, (int) indexOffset, count);
+    }
+
+    // 按新到旧或任意顺序保存的留言，逐条解码；与JSON数组一样可以整体读入列表
+    static List<Message> read(ByteBuffer buffer) throws IOException {
+        Records records = open(buffer);
+        List<Message> messages = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            messages.add(records.decode(i));
+        }
+        return messages;
+    }
+
+    private static void encodePayload(Message message, ByteArrayOutputStream out) throws IOException {
+        long millis = message.getCreateTimeMillis();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeLong(millis);
+        writeString(data, message.getId());
+        writeString(data, message.getName());
+        writeString(data, message.getEmail());
+        writeString(data, message.getContent());
+        writeString(data, millis >= 0 ? null : message.getCreateTime());
+        data.flush();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // 从position开始读取varint，读取后position指向其后第一个字节
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("留言二进制记录长度无效");
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarint(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    // 文件中的全部记录，按索引随机访问；get()每次解码一条并校验CRC，不缓存解码结果
+    static final class Records extends AbstractList<Message> implements RandomAccess {
+        private final ByteBuffer buffer;
+        private final int indexOffset;
+        private final int count;
+
+        private Records(ByteBuffer buffer, int indexOffset, int count) {
+            this.buffer = buffer;
+            this.indexOffset = indexOffset;
+            this.count = count;
+        }
+
+        @Override
+        public Message get(int index) {
+            try {
+                return decode(index);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        Message decode(int index) throws IOException {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+            }
+            // 每次使用独立的副本，多个线程可以同时读取同一映射
+            ByteBuffer record = buffer.duplicate();
+            int offset = buffer.getInt(indexOffset + 4 * index);
+            if (offset < HEADER_BYTES || offset >= indexOffset) {
+                throw new IOException("留言二进制记录偏移无效: " + offset);
+            }
+            record.position(offset);
+            int length = readVarint(record);
+            int expectedCrc = record.getInt();
+            int start = record.position();
+            if (length < 8 || start + length > indexOffset) {
+                throw new IOException("留言二进制记录长度无效: " + length);
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer payload = record.duplicate();
+            payload.limit(start + length);
+            crc.update(payload);
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("留言二进制记录校验失败，偏移 " + offset);
+            }
+            record.limit(start + length);
+            long millis = record.getLong();
+            Message message = new Message();
+            message.setId(readString(record));
+            message.setName(readString(record));
+            message.setEmail(readString(record));
+            message.setContent(readString(record));
+            String createTime = readString(record);
+            if (millis >= 0) {
+                message.setCreateTimeMillis(millis);
+            } else {
+                message.setCreateTime(createTime);
+            }
+            return message;
+        }
+    }
+
+    // 与JSON格式互相转换：java com.resume.message.MessageBinaryFormat to-binary|to-json <输入> <输出>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !("to-binary".equals(args[0]) || "to-json".equals(args[0]))) {
+            System.err.println("用法: MessageBinaryFormat to-binary|to-json <输入文件> <输出文件>");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[1]);
+        Path output = Paths.get(args[2]);
+        byte[] bytes = Files.readAllBytes(input);
+        List<Message> messages = "to-binary".equals(args[0])
+                ? FileMessageRepository.jsonToMessages(bytes)
+                : read(ByteBuffer.wrap(bytes));
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024)) {
+            if ("to-binary".equals(args[0])) {
+                write(messages, out);
+            } else {
+                try (JsonStreamWriter json = new JsonStreamWriter(out)) {
+                    json.messages(messages);
+                }
+            }
+        }
+        System.out.println("已转换 " + messages.size() + " 条留言: " + input + " -> " + output);
+    }
+}
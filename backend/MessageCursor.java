@@ -0,0 +1,122 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+// 分页游标：由(createTime, id)组成，与SQLQuery1.sql中idx_message_createTime的倒序一致，id用于同一时间内的排序
+final class MessageCursor {
+    // 留言列表的排序：createTime倒序，相同时按id倒序
+    static final Comparator<Message> NEWEST_FIRST = (a, b) -> {
+        int byTime = Long.compare(b.getCreateTimeMillis(), a.getCreateTimeMillis());
+        return byTime != 0 ? byTime : compareIds(b.getId(), a.getId());
+    };
+    
+    final long createTime;
+    final String id;
+    
+    MessageCursor(long createTime, String id) {
+        this.createTime = createTime;
+        this.id = id == null ? "" : id;
+    }
+    
+    static MessageCursor of(Message message) {
+        return new MessageCursor(message.getCreateTimeMillis(), message.getId());
+    }
+    
+    // 对外是不透明的URL安全字符串
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createTime + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    static MessageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int colon = raw.indexOf(':');
+            return new MessageCursor(Long.parseLong(raw.substring(0, colon)), raw.substring(colon + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("游标无效: " + token);
+        }
+    }
+    
+    // 在按NEWEST_FIRST排序的列表中，返回第一个比游标更旧的位置
+    static int firstOlderThan(List<Message> messages, MessageCursor cursor) {
+        return firstOlderThan(messages, 0, messages.size(), cursor);
+    }
+    
+    // 只在[from, to)范围内查找，范围之前的元素都不比游标旧
+    static int firstOlderThan(List<Message> messages, int from, int to, MessageCursor cursor) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cursor.compareTo(messages.get(mid)) < 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+    
+    // 在按NEWEST_FIRST排序的列表中，返回第一个不比游标更新的位置（其前面的元素都更新）
+    static int firstNotNewerThan(List<Message> messages, MessageCursor cursor) {
+        return firstNotNewerThan(messages, 0, messages.size(), cursor);
+    }
+    
+    // 只在[from, to)范围内查找，范围之前的元素都比游标新
+    static int firstNotNewerThan(List<Message> messages, int from, int to, MessageCursor cursor) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cursor.compareTo(messages.get(mid)) <= 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+    
+    // 按NEWEST_FIRST的位置比较：负数表示游标排在留言之前（游标更新）
+    int compareTo(Message message) {
+        return compareTo(message.getCreateTimeMillis(), message.getId());
+    }
+    
+    int compareTo(MessageCursor other) {
+        return compareTo(other.createTime, other.id);
+    }
+    
+    private int compareTo(long otherTime, String otherId) {
+        int byTime = Long.compare(otherTime, createTime);
+        return byTime != 0 ? byTime : compareIds(otherId, id);
+    }
+    
+    // 数字id按数值比较，其余按字符串比较
+    static int compareIds(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a.length() != b.length() && isDigits(a) && isDigits(b)) {
+            return Integer.compare(a.length(), b.length());
+        }
+        return a.compareTo(b);
+    }
+    
+    private static boolean isDigits(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
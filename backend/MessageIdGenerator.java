@@ -0,0 +1,46 @@
+package com.resume.message;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// 64位留言id：[41位毫秒时间（自2020-01-01起，约可用69年）][10位节点号][12位序号]。
+// 同一节点生成的id严格递增，不同节点（node.id不同）的id不会重复；数值大致按时间排序，
+// 同一秒内的留言按id排序即为创建顺序，与游标分页的(createTime, id)一致。旧数据的id是13位毫秒数，
+// 新id（18位以上）按数值比较总是更大，与其更晚创建一致。
+// 时间与序号合并在一个AtomicLong中用CAS更新，不加锁；一毫秒内序号用完或时钟回拨时，
+// 序号进位到时间部分，即预支下一毫秒，不等待时钟，待真实时间追上后自然恢复
+final class MessageIdGenerator {
+    private static final long EPOCH = 1577836800000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long node;
+    // 高位为最近使用的时间（相对EPOCH的毫秒），低SEQUENCE_BITS位为该毫秒内最近使用的序号
+    private final AtomicLong state = new AtomicLong();
+    // 时间部分超前于时钟的id数量（序号用完或时钟回拨），持续增长说明生成速度或时钟有问题
+    private final AtomicLong ahead = new AtomicLong();
+
+    MessageIdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("node.id 须在 0 到 " + MAX_NODE + " 之间: " + node);
+        }
+        this.node = node;
+        Metrics.register("messages.ids.ahead", ahead::get);
+    }
+
+    long next() {
+        while (true) {
+            long current = state.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            long next = now > current >>> SEQUENCE_BITS ? now << SEQUENCE_BITS : current + 1;
+            if (state.compareAndSet(current, next)) {
+                long time = next >>> SEQUENCE_BITS;
+                if (time > now) {
+                    ahead.incrementAndGet();
+                }
+                return time << (NODE_BITS + SEQUENCE_BITS) | node << SEQUENCE_BITS | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+// 追加写日志：每次新增留言只在文件末尾追加一条记录，启动时在快照之上重放
+// 记录格式：[4字节长度][4字节CRC32][1字节操作类型][留言JSON(UTF-8)]，长度与CRC覆盖操作类型和JSON
+final class MessageLog implements Closeable {
+    static final byte OP_ADD = 1;
+    private static final int HEADER_BYTES = 8;
+    // 单条记录的长度上限，超过即视为损坏
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final Path path;
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong size = new AtomicLong();
+    private FileChannel channel;
+
+    MessageLog(Path path) {
+        this.path = path;
+        Metrics.register("messages.log.appended", appended::get);
+        Metrics.register("messages.log.bytes", size::get);
+    }
+
+    // 读取所有完整记录。崩溃只会撕裂最后一条记录（不完整、校验失败或全为0），直接截断；
+    // 其后还有数据的损坏或校验通过却无法解析的记录不是崩溃造成的，其后的记录可能仍然有效，
+    // 先把原文件复制为<日志名>.corrupt-<时间>再截断，留待人工恢复，不直接丢弃
+    List<Message> replay() throws IOException {
+        List<Message> messages = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return messages;
+        }
+        long fileSize = Files.size(path);
+        long valid = 0;
+        boolean unparsable = false;
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            while (valid < fileSize) {
+                byte[] payload = readRecord(in);
+                if (payload == null) {
+                    break;
+                }
+                if (payload[0] == OP_ADD) {
+                    messages.add(SimpleMessageApplication.readMessage(
+                            new JsonReader(payload, 1, payload.length - 1)));
+                }
+                valid += HEADER_BYTES + payload.length;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("留言日志记录无法解析: " + e.getMessage());
+            unparsable = true;
+        }
+        if (valid < fileSize) {
+            if (!unparsable && tornTail(valid, fileSize)) {
+                System.err.println("留言日志尾部存在不完整记录，截断 " + (fileSize - valid) + " 字节");
+            } else {
+                Path copy = path.resolveSibling(path.getFileName() + ".corrupt-" + System.currentTimeMillis());
+                Files.copy(path, copy);
+                System.err.println("留言日志在第 " + valid + " 字节处损坏，其后 " + (fileSize - valid)
+                        + " 字节中可能还有有效记录；原文件已复制到 " + copy + "，日志从损坏处截断");
+            }
+            try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                truncate.truncate(valid);
+            }
+        }
+        return messages;
+    }
+
+    // offset处读取失败的记录是否为撕裂的尾部：按头部长度它延伸到文件末尾（不完整或最后一条校验失败），
+    // 或者从offset到文件末尾全为0（文件系统在崩溃后补零）
+    private boolean tornTail(long offset, long fileSize) throws IOException {
+        long remaining = fileSize - offset;
+        if (remaining < HEADER_BYTES) {
+            return true;
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(file.position(offset)), 64 * 1024));
+            int length = in.readInt();
+            // 撕裂的写入只会缺少末尾的字节，已写出的头部仍是正确的，长度超出上限说明是损坏
+            if (length > 0 && length <= MAX_RECORD_BYTES && HEADER_BYTES + (long) length >= remaining) {
+                return true;
+            }
+            if (length != 0) {
+                return false;
+            }
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // 打开日志用于追加（不存在时创建）
+    void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        size.set(channel.size());
+    }
+
+    boolean isOpen() {
+        return channel != null;
+    }
+
+    // 追加一批新增留言记录：一次聚集写入后force()落盘，返回时整批已持久化。
+    // 失败时把文件截回写入前的大小，不留下不完整的记录，之后追加的记录重放时不会被当作损坏处之后的数据
+    void appendAll(List<Message> messages) throws IOException {
+        if (channel == null) {
+            throw new IOException("留言日志未打开");
+        }
+        ByteBuffer[] records = new ByteBuffer[messages.size()];
+        long total = 0;
+        for (int i = 0; i < records.length; i++) {
+            records[i] = encode(OP_ADD, messages.get(i));
+            total += records[i].remaining();
+        }
+        long written = 0;
+        try {
+            while (written < total) {
+                written += channel.write(records);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(size.get());
+            } catch (IOException truncateFailed) {
+                e.addSuppressed(truncateFailed);
+            }
+            throw e;
+        }
+        appended.addAndGet(records.length);
+        size.addAndGet(total);
+    }
+
+    // 当前日志文件大小（字节）
+    long size() {
+        return size.get();
+    }
+
+    // 清空日志；仅在快照已持久化、日志中的记录都已包含在快照中之后调用
+    void truncate() throws IOException {
+        if (channel == null) {
+            throw new IOException("留言日志未打开");
+        }
+        channel.truncate(0);
+        channel.force(true);
+        size.set(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    static ByteBuffer encode(byte op, Message message) throws IOException {
+        ByteArrayOutputStream json = new ByteArrayOutputStream(256);
+        json.write(op);
+        try (JsonStreamWriter writer = new JsonStreamWriter(json)) {
+            writer.message(message);
+        }
+        byte[] payload = json.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return record;
+    }
+
+    // 读取一条记录的负载，文件结束、记录不完整或校验失败时返回null
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int expectedCrc = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            return (int) crc.getValue() == expectedCrc ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// 留言存储后端：memory(仅内存) / file(快照+追加日志+冷段，默认) / jdbc(SQLQuery1.sql中的dbo.message)
+interface MessageRepository extends Closeable {
+    // 打开存储并加载已有数据，可重复调用
+    void open() throws IOException;
+
+    // 新增一条留言，返回时已按该后端的方式保存；id可能由后端重新分配
+    void add(Message message) throws IOException;
+
+    // 按新到旧读取一页：before取比游标更旧的留言，after取紧邻游标的更新留言，二者至多一个非null
+    Page page(int limit, MessageCursor before, MessageCursor after) throws IOException;
+
+    // 按游标精确查找一条留言，不存在时返回null；用于把检索结果解析为留言
+    Message find(MessageCursor cursor) throws IOException;
+
+    // 按游标批量查找，返回的列表与游标一一对应，不存在的位置为null；用于一次解析一页检索结果
+    List<Message> findAll(List<MessageCursor> cursors) throws IOException;
+
+    // 数据版本，每次新增后变化，用于响应缓存；无法感知外部修改的后端返回-1，表示不可缓存
+    long version();
+
+    // 空存储首次启动时写入的欢迎留言
+    static Message welcomeMessage() {
+        Message message = new Message();
+        message.setId("1");
+        message.setName("系统");
+        message.setEmail("system@resume.com");
+        message.setContent("欢迎使用留言板");
+        message.setCreateTimeMillis(SimpleMessageApplication.currentSecondMillis());
+        return message;
+    }
+
+    // 一页留言（新到旧）；hasOlder/hasNewer表示本页最后一条之后还有更旧、第一条之前还有更新的留言
+    final class Page {
+        final List<Message> messages;
+        final boolean hasOlder;
+        final boolean hasNewer;
+
+        Page(List<Message> messages, boolean hasOlder, boolean hasNewer) {
+            this.messages = messages;
+            this.hasOlder = hasOlder;
+            this.hasNewer = hasNewer;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 留言全文检索的倒排索引，索引name、email与content：中日韩文字按单字与相邻两字（二元组）切分，
+// 其他文字按连续的字母数字切分为小写单词。每条留言按加入顺序编号，倒排表只追加，
+// 编码为[varint(编号差值)][varint(词频)]的字节数组。
+// 与MessageStore相同，单写者追加、每次写入发布不可变视图：已发布长度之前的字节不再修改，
+// 读者先取留言表再取各倒排表，忽略超出留言表的编号，无需加锁。
+// 留言表只保存每条留言的游标(createTime, id)与词项数，不引用留言对象，命中结果由调用方通过存储查找，
+// 冷段与数据库中的历史留言建立索引后不会常驻堆内存
+final class MessageSearchIndex {
+    // BM25参数
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // 单次查询最多使用的词项数
+    private static final int MAX_QUERY_TERMS = 32;
+
+    private final Map<String, Postings> dictionary = new ConcurrentHashMap<>();
+    private final AtomicLong queries = new AtomicLong();
+    // 以下字段只由写者访问
+    private long[] times = new long[1024];
+    private String[] ids = new String[1024];
+    private int[] lengths = new int[1024];
+    private int size;
+    private long totalLength;
+    private volatile long postingsBytes;
+    private volatile Docs docs = new Docs(times, ids, lengths, 0, 0);
+
+    MessageSearchIndex() {
+        Metrics.register("search.docs", () -> docs.size);
+        Metrics.register("search.terms", dictionary::size);
+        Metrics.register("search.postingsBytes", () -> postingsBytes);
+        Metrics.register("search.queries", queries::get);
+    }
+
+    // 按从旧到新的顺序加入留言，新留言排在同分结果的前面
+    synchronized void add(Message message) {
+        Map<String, int[]> frequencies = new HashMap<>();
+        int length = tokenize(message.getName(), frequencies, false)
+                + tokenize(message.getEmail(), frequencies, false)
+                + tokenize(message.getContent(), frequencies, false);
+        if (size == lengths.length) {
+            times = Arrays.copyOf(times, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        int doc = size;
+        times[doc] = message.getCreateTimeMillis();
+        ids[doc] = message.getId();
+        lengths[doc] = length;
+        for (Map.Entry<String, int[]> term : frequencies.entrySet()) {
+            Postings postings = dictionary.get(term.getKey());
+            boolean created = postings == null;
+            if (created) {
+                postings = new Postings();
+            }
+            postingsBytes += postings.append(doc, term.getValue()[0]);
+            if (created) {
+                dictionary.put(term.getKey(), postings);
+            }
+        }
+        size++;
+        totalLength += length;
+        docs = new Docs(times, ids, lengths, size, totalLength);
+    }
+
+    // 查询词切分后的词项，去重并保持顺序；为空表示没有可检索的内容
+    static List<String> queryTerms(String query) {
+        Map<String, int[]> terms = new HashMap<>();
+        Set<String> ordered = new LinkedHashSet<>();
+        tokenize(query, terms, true, ordered);
+        List<String> result = new ArrayList<>(ordered);
+        return result.size() > MAX_QUERY_TERMS ? result.subList(0, MAX_QUERY_TERMS) : result;
+    }
+
+    // 返回同时包含全部词项的留言的游标，按BM25得分从高到低、同分时新到旧排列，跳过offset条后取limit条
+    Result search(List<String> terms, int offset, int limit) {
+        queries.incrementAndGet();
+        Docs snapshot = docs;
+        if (terms.isEmpty() || snapshot.size == 0) {
+            return new Result(Collections.<MessageCursor>emptyList(), 0);
+        }
+        View[] views = new View[terms.size()];
+        for (int i = 0; i < views.length; i++) {
+            Postings postings = dictionary.get(terms.get(i));
+            if (postings == null) {
+                return new Result(Collections.<MessageCursor>emptyList(), 0);
+            }
+            views[i] = postings.view;
+        }
+        // 从最短的倒排表开始求交集，候选数只会减少
+        Arrays.sort(views, (a, b) -> Integer.compare(a.count, b.count));
+        float averageLength = Math.max(1f, (float) snapshot.totalLength / snapshot.size);
+        int[] candidates = new int[views[0].count];
+        float[] scores = new float[views[0].count];
+        int count = 0;
+        PostingsReader reader = new PostingsReader(views[0]);
+        float idf = idf(snapshot.size, views[0].count);
+        while (reader.next() && reader.doc < snapshot.size) {
+            candidates[count] = reader.doc;
+            scores[count] = score(idf, reader.frequency, snapshot.lengths[reader.doc], averageLength);
+            count++;
+        }
+        for (int v = 1; v < views.length && count > 0; v++) {
+            reader = new PostingsReader(views[v]);
+            idf = idf(snapshot.size, views[v].count);
+            int kept = 0;
+            boolean more = reader.next();
+            for (int i = 0; i < count && more; i++) {
+                while (more && reader.doc < candidates[i]) {
+                    more = reader.next();
+                }
+                if (more && reader.doc == candidates[i]) {
+                    candidates[kept] = candidates[i];
+                    scores[kept] = scores[i] + score(idf, reader.frequency, snapshot.lengths[reader.doc], averageLength);
+                    kept++;
+                }
+            }
+            count = kept;
+        }
+        int wanted = (int) Math.min(count, (long) offset + limit);
+        if (wanted <= offset) {
+            return new Result(Collections.<MessageCursor>emptyList(), count);
+        }
+        long[] top = top(candidates, scores, count, wanted);
+        List<MessageCursor> page = new ArrayList<>(wanted - offset);
+        for (int i = offset; i < wanted; i++) {
+            int doc = (int) top[i];
+            page.add(new MessageCursor(snapshot.times[doc], snapshot.ids[doc]));
+        }
+        return new Result(page, count);
+    }
+
+    // 得分最高的wanted条，从高到低排列。得分为正数，其浮点位模式与大小顺序一致，
+    // 高32位为得分、低32位为编号合成一个long，用大小为wanted的最小堆选出，不需要对全部候选排序
+    private static long[] top(int[] candidates, float[] scores, int count, int wanted) {
+        long[] heap = new long[wanted];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            long key = (long) Float.floatToIntBits(scores[i]) << 32 | candidates[i];
+            if (size < wanted) {
+                int child = size++;
+                while (child > 0 && heap[(child - 1) >>> 1] > key) {
+                    heap[child] = heap[(child - 1) >>> 1];
+                    child = (child - 1) >>> 1;
+                }
+                heap[child] = key;
+            } else if (key > heap[0]) {
+                siftDown(heap, size, key);
+            }
+        }
+        // 依次取出堆顶（当前最小）放到末尾，得到从高到低的顺序
+        for (int last = size - 1; last > 0; last--) {
+            long smallest = heap[0];
+            siftDown(heap, last, heap[last]);
+            heap[last] = smallest;
+        }
+        return heap;
+    }
+
+    private static void siftDown(long[] heap, int size, long key) {
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= key) {
+                break;
+            }
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = key;
+    }
+
+    private static float idf(int documents, int frequency) {
+        return (float) Math.log(1 + (documents - frequency + 0.5) / (frequency + 0.5));
+    }
+
+    private static float score(float idf, int frequency, int length, float averageLength) {
+        return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    private static int tokenize(String text, Map<String, int[]> frequencies, boolean query) {
+        return tokenize(text, frequencies, query, null);
+    }
+
+    // 切分text并累计词频，返回词项个数。建立索引时中日韩文字同时输出单字与二元组；
+    // 查询时连续两字以上只用二元组（相当于短语匹配），单独一个字才用单字
+    private static int tokenize(String text, Map<String, int[]> frequencies, boolean query, Set<String> ordered) {
+        if (text == null) {
+            return 0;
+        }
+        int tokens = 0;
+        StringBuilder word = new StringBuilder();
+        int runStart = -1;
+        int i = 0;
+        while (i <= text.length()) {
+            int c = i < text.length() ? text.codePointAt(i) : -1;
+            boolean cjk = c >= 0 && isCjk(c);
+            if (!cjk && runStart >= 0) {
+                tokens += cjkRun(text, runStart, i, frequencies, query, ordered);
+                runStart = -1;
+            }
+            if (c >= 0 && !cjk && Character.isLetterOrDigit(c)) {
+                word.appendCodePoint(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                count(word.toString(), frequencies, ordered);
+                tokens++;
+                word.setLength(0);
+            }
+            if (cjk && runStart < 0) {
+                runStart = i;
+            }
+            i += c >= 0 ? Character.charCount(c) : 1;
+        }
+        return tokens;
+    }
+
+    private static int cjkRun(String text, int start, int end, Map<String, int[]> frequencies,
+                              boolean query, Set<String> ordered) {
+        int tokens = 0;
+        int second = start + Character.charCount(text.codePointAt(start));
+        if (!query || second == end) {
+            for (int i = start; i < end; i += Character.charCount(text.codePointAt(i))) {
+                count(text.substring(i, i + Character.charCount(text.codePointAt(i))), frequencies, ordered);
+                tokens++;
+            }
+        }
+        for (int i = start; i < end; ) {
+            int next = i + Character.charCount(text.codePointAt(i));
+            if (next == end) {
+                break;
+            }
+            count(text.substring(i, next + Character.charCount(text.codePointAt(next))), frequencies, ordered);
+            tokens++;
+            i = next;
+        }
+        return tokens;
+    }
+
+    private static boolean isCjk(int c) {
+        // 谚文字母（U+1100）之前没有中日韩文字，常见的ASCII与拉丁字母不再查询Unicode属性
+        if (c < 0x1100) {
+            return false;
+        }
+        if (Character.isIdeographic(c)) {
+            return true;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HIRAGANA || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static void count(String term, Map<String, int[]> frequencies, Set<String> ordered) {
+        int[] frequency = frequencies.get(term);
+        if (frequency == null) {
+            frequencies.put(term, new int[]{1});
+            if (ordered != null) {
+                ordered.add(term);
+            }
+        } else {
+            frequency[0]++;
+        }
+    }
+
+    // 一页检索结果：命中留言的游标；total为匹配的留言总数
+    static final class Result {
+        final List<MessageCursor> hits;
+        final int total;
+
+        Result(List<MessageCursor> hits, int total) {
+            this.hits = hits;
+            this.total = total;
+        }
+    }
+
+    // 已发布的留言表：数组中[0, size)的元素发布后不再修改
+    private static final class Docs {
+        final long[] times;
+        final String[] ids;
+        final int[] lengths;
+        final int size;
+        final long totalLength;
+
+        Docs(long[] times, String[] ids, int[] lengths, int size, long totalLength) {
+            this.times = times;
+            this.ids = ids;
+            this.lengths = lengths;
+            this.size = size;
+            this.totalLength = totalLength;
+        }
+    }
+
+    // 一个词项的倒排表，编号递增
+    private static final class Postings {
+        // 以下字段只由写者访问
+        private byte[] data = new byte[8];
+        private int length;
+        private int count;
+        private int lastDoc = -1;
+        private volatile View view;
+
+        // 追加一条记录并发布，返回编码后的字节数
+        int append(int doc, int frequency) {
+            int start = length;
+            if (length + 10 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            length = writeVarint(data, length, doc - lastDoc);
+            length = writeVarint(data, length, frequency);
+            lastDoc = doc;
+            count++;
+            view = new View(data, length, count);
+            return length - start;
+        }
+
+        private static int writeVarint(byte[] target, int position, int value) {
+            while ((value & ~0x7F) != 0) {
+                target[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            target[position++] = (byte) value;
+            return position;
+        }
+    }
+
+    private static final class View {
+        final byte[] data;
+        final int length;
+        final int count;
+
+        View(byte[] data, int length, int count) {
+            this.data = data;
+            this.length = length;
+            this.count = count;
+        }
+    }
+
+    // 顺序解码一个倒排表视图
+    private static final class PostingsReader {
+        private final byte[] data;
+        private final int length;
+        private int position;
+        int doc = -1;
+        int frequency;
+
+        PostingsReader(View view) {
+            this.data = view.data;
+            this.length = view.length;
+        }
+
+        boolean next() {
+            if (position >= length) {
+                return false;
+            }
+            doc += readVarint();
+            frequency = readVarint();
+            return true;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+// 冷段存储：热区之外的旧留言按批封存为不可变的段文件，启动时只读取每个段的索引尾部，
+// 分页读取到某个段时才把文件内存映射，按偏移表逐条解码，不在堆中保存段内容，堆内存与历史留言总数无关；
+// 解码出的留言带有记录中的JSON字节（映射的切片），响应时直接复制而不重新编码。
+// 段文件格式：[记录...][键...][索引][8字节索引位置][4字节魔数]，记录与追加日志相同（长度+CRC32+操作类型+JSON），
+// 按新到旧排列；键为各记录的游标，索引为[条数][最新游标][最旧游标][各记录偏移][各键偏移]。
+// 分页定位时二分查找只比较映射中的键，不复制、不解码记录；旧格式的段（MAGIC，没有键）仍可读取，查找时解码记录
+final class MessageSegments {
+    private static final int MAGIC = 0x4D534547;
+    private static final int MAGIC_WITH_KEYS = 0x4D534B32;
+    private static final int TRAILER_BYTES = 12;
+    // 游标在索引中最多占用的字节数：8字节时间 + 2字节长度 + id
+    private static final int MAX_CURSOR_BYTES = 10 + 0xFFFF;
+    private static final String SUFFIX = ".seg";
+
+    private final Path dir;
+    private final int hotWindow;
+    private final int segmentSize;
+    private final AtomicLong mapped = new AtomicLong();
+    private long nextSequence;
+
+    MessageSegments(Path dir, int hotWindow, int segmentSize) {
+        this.dir = dir;
+        this.hotWindow = Math.max(1, hotWindow);
+        this.segmentSize = Math.max(1, segmentSize);
+        Metrics.register("messages.segments.mapped", mapped::get);
+    }
+
+    int segmentSize() {
+        return segmentSize;
+    }
+
+    // 热区达到该条数时封存最旧的一段
+    int sealThreshold() {
+        return hotWindow + segmentSize;
+    }
+
+    // 读取目录中所有段的索引，返回按新到旧排列的段列表
+    List<Segment> open() throws IOException {
+        Files.createDirectories(dir);
+        List<Segment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long sequence;
+                try {
+                    sequence = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                try {
+                    segments.add(readIndex(file, sequence));
+                } catch (IOException e) {
+                    // 损坏的段保留在磁盘上供人工处理，其余段照常使用
+                    System.err.println("无法读取留言段，已跳过: " + e.getMessage());
+                }
+            }
+        }
+        // 段号越大越新
+        segments.sort((a, b) -> Long.compare(b.sequence, a.sequence));
+        return segments;
+    }
+
+    // 把按新到旧排列的留言写成新段：先写临时文件并落盘，再原子重命名
+    Segment seal(List<Message> newestFirst) throws IOException {
+        long sequence = nextSequence++;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(newestFirst.size() * 256);
+        int[] offsets = new int[newestFirst.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = bytes.size();
+            ByteBuffer record = MessageLog.encode(MessageLog.OP_ADD, newestFirst.get(i));
+            bytes.write(record.array(), 0, record.limit());
+        }
+        DataOutputStream out = new DataOutputStream(bytes);
+        int[] keyOffsets = new int[offsets.length];
+        for (int i = 0; i < keyOffsets.length; i++) {
+            // DataOutputStream不缓冲，bytes.size()即当前位置
+            keyOffsets[i] = bytes.size();
+            writeCursor(out, MessageCursor.of(newestFirst.get(i)));
+        }
+        MessageCursor newest = MessageCursor.of(newestFirst.get(0));
+        MessageCursor oldest = MessageCursor.of(newestFirst.get(offsets.length - 1));
+        long indexOffset = bytes.size();
+        out.writeInt(offsets.length);
+        writeCursor(out, newest);
+        writeCursor(out, oldest);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        for (int offset : keyOffsets) {
+            out.writeInt(offset);
+        }
+        out.writeLong(indexOffset);
+        out.writeInt(MAGIC_WITH_KEYS);
+        out.flush();
+
+        Path target = dir.resolve(String.format("%010d", sequence) + SUFFIX);
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        FileMessageRepository.syncDirectory(dir);
+        return new Segment(this, target, sequence, offsets.length, newest, oldest);
+    }
+
+    // 留言是否已封存在某个段中（启动时用于去除快照/日志中与段重复的留言）
+    boolean contains(List<Segment> segments, Message message) throws IOException {
+        MessageCursor cursor = MessageCursor.of(message);
+        for (Segment segment : segments) {
+            if (cursor.compareTo(segment.newest) >= 0 && cursor.compareTo(segment.oldest) <= 0) {
+                int index = segment.firstNotNewerThan(cursor);
+                return index < segment.count && segment.mapping().compare(cursor, index) == 0;
+            }
+        }
+        return false;
+    }
+
+    // 映射整个段文件；映射不占用堆内存，关闭通道后仍然有效，由操作系统按需换入换出
+    private Mapping map(Segment segment) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int indexOffset = (int) data.getLong(data.limit() - TRAILER_BYTES);
+        boolean withKeys = data.getInt(data.limit() - 4) == MAGIC_WITH_KEYS;
+        // 跳过条数与两个游标，定位到偏移表
+        ByteBuffer index = data.duplicate();
+        index.position(indexOffset + 4);
+        readCursor(index);
+        readCursor(index);
+        if (index.position() + (withKeys ? 8L : 4L) * segment.count > data.limit() - TRAILER_BYTES) {
+            throw new IOException("留言段文件损坏: " + segment.path);
+        }
+        mapped.incrementAndGet();
+        int keyOffsetsStart = withKeys ? index.position() + 4 * segment.count : -1;
+        return new Mapping(segment.path, data, index.position(), keyOffsetsStart, indexOffset);
+    }
+
+    private Segment readIndex(Path file, long sequence) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_BYTES) {
+                throw new IOException("留言段文件损坏: " + file);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            readFully(channel, trailer, size - TRAILER_BYTES);
+            long indexOffset = trailer.getLong(0);
+            int magic = trailer.getInt(8);
+            if ((magic != MAGIC && magic != MAGIC_WITH_KEYS) || indexOffset < 0 || indexOffset > size - TRAILER_BYTES) {
+                throw new IOException("留言段文件损坏: " + file);
+            }
+            // 只读取条数和两个游标，偏移表在加载段内容时才读取
+            ByteBuffer header = ByteBuffer.allocate(
+                    (int) Math.min(size - TRAILER_BYTES - indexOffset, 4 + 2 * MAX_CURSOR_BYTES));
+            readFully(channel, header, indexOffset);
+            int count = header.getInt();
+            MessageCursor newest = readCursor(header);
+            MessageCursor oldest = readCursor(header);
+            return new Segment(this, file, sequence, count, newest, oldest);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("留言段文件不完整");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeCursor(DataOutputStream out, MessageCursor cursor) throws IOException {
+        byte[] id = cursor.id.getBytes(StandardCharsets.UTF_8);
+        out.writeLong(cursor.createTime);
+        out.writeShort(id.length);
+        out.write(id);
+    }
+
+    private static MessageCursor readCursor(ByteBuffer buffer) {
+        long createTime = buffer.getLong();
+        byte[] id = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(id);
+        return new MessageCursor(createTime, new String(id, StandardCharsets.UTF_8));
+    }
+
+    // 一个段文件的只读映射：get时按偏移表定位记录，校验CRC后解码，记录中的JSON字节作为留言的编码结果
+    private static final class Mapping {
+        private final Path path;
+        private final ByteBuffer data;
+        private final int offsetsStart;
+        // 键偏移表的位置，旧格式的段没有键时为-1
+        private final int keyOffsetsStart;
+        private final int recordsEnd;
+
+        private Mapping(Path path, ByteBuffer data, int offsetsStart, int keyOffsetsStart, int recordsEnd) {
+            this.path = path;
+            this.data = data;
+            this.offsetsStart = offsetsStart;
+            this.keyOffsetsStart = keyOffsetsStart;
+            this.recordsEnd = recordsEnd;
+        }
+
+        // 游标与第index条比较，结果同MessageCursor.compareTo；直接读取映射中的键，时间相同时才解码id
+        int compare(MessageCursor cursor, int index) throws IOException {
+            if (keyOffsetsStart < 0) {
+                return cursor.compareTo(read(index));
+            }
+            int offset = data.getInt(keyOffsetsStart + 4 * index);
+            if (offset < 0 || offset > recordsEnd - 10) {
+                throw new IOException("留言段文件损坏: " + path);
+            }
+            long createTime = data.getLong(offset);
+            if (createTime != cursor.createTime) {
+                return Long.compare(createTime, cursor.createTime);
+            }
+            int length = data.getShort(offset + 8) & 0xFFFF;
+            if (length > recordsEnd - offset - 10) {
+                throw new IOException("留言段文件损坏: " + path);
+            }
+            byte[] id = new byte[length];
+            ByteBuffer key = data.duplicate();
+            key.position(offset + 10);
+            key.get(id);
+            return MessageCursor.compareIds(new String(id, StandardCharsets.UTF_8), cursor.id);
+        }
+
+        Message read(int index) throws IOException {
+            int offset = data.getInt(offsetsStart + 4 * index);
+            int length = offset >= 0 && offset <= recordsEnd - 8 ? data.getInt(offset) : -1;
+            if (length < 1 || length > recordsEnd - offset - 8) {
+                throw new IOException("留言段文件损坏: " + path);
+            }
+            // 每次使用独立的副本，多个读线程共享同一映射
+            ByteBuffer payload = data.duplicate();
+            payload.limit(offset + 8 + length).position(offset + 8);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != data.getInt(offset + 4) || payload.get() != MessageLog.OP_ADD) {
+                throw new IOException("留言段文件损坏: " + path);
+            }
+            ByteBuffer json = payload.slice();
+            byte[] bytes = new byte[json.remaining()];
+            json.duplicate().get(bytes);
+            Message message = SimpleMessageApplication.readMessage(new JsonReader(bytes));
+            message.setEncoded(json);
+            return message;
+        }
+    }
+
+    // 一个已封存的段：只常驻索引信息，内容在首次访问时映射
+    static final class Segment {
+        private final MessageSegments owner;
+        private final Path path;
+        final long sequence;
+        final int count;
+        final MessageCursor newest;
+        final MessageCursor oldest;
+        private volatile Mapping mapping;
+
+        private Segment(MessageSegments owner, Path path, long sequence, int count,
+                        MessageCursor newest, MessageCursor oldest) {
+            this.owner = owner;
+            this.path = path;
+            this.sequence = sequence;
+            this.count = count;
+            this.newest = newest;
+            this.oldest = oldest;
+        }
+
+        // 段内第index条（新到旧），每次从映射中解码
+        Message get(int index) {
+            try {
+                return mapping().read(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // 段内第一个比游标旧的位置，只比较键，不解码记录
+        int firstOlderThan(MessageCursor cursor) {
+            return search(cursor, false);
+        }
+
+        // 段内第一个不比游标新的位置
+        int firstNotNewerThan(MessageCursor cursor) {
+            return search(cursor, true);
+        }
+
+        private int search(MessageCursor cursor, boolean inclusive) {
+            try {
+                Mapping current = mapping();
+                int low = 0;
+                int high = count;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    int compare = current.compare(cursor, mid);
+                    if (compare < 0 || (inclusive && compare == 0)) {
+                        high = mid;
+                    } else {
+                        low = mid + 1;
+                    }
+                }
+                return low;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // 并发首次访问时可能各自映射一次，结果相同，保留后写入的即可
+        private Mapping mapping() throws IOException {
+            Mapping current = mapping;
+            if (current == null) {
+                current = owner.map(this);
+                mapping = current;
+            }
+            return current;
+        }
+    }
+}
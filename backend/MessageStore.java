@@ -0,0 +1,258 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 单写者/多读者的留言存储：热区留言按从旧到新追加在数组末尾，写入后不再修改，
+// 每次写入发布一个新的(数组, 长度, 冷段列表, 版本)快照。读者只读取一次volatile引用即得到一致的视图，
+// 从末尾倒序即为新到旧，无需加锁也无需复制。
+// 热区中最旧的留言由写者封存为冷段（见MessageSegments），封存与从热区移除在同一次发布中完成，
+// 读者不会看到重复或缺失的留言
+final class MessageStore {
+    private static final Comparator<Message> OLDEST_FIRST = MessageCursor.NEWEST_FIRST.reversed();
+
+    private final AtomicLong outOfOrder = new AtomicLong();
+    // 以下字段只由写者访问
+    private Message[] items;
+    private int size;
+    private List<MessageSegments.Segment> segments = Collections.emptyList();
+    private int[] segmentStarts = new int[1];
+    private long version;
+    private volatile Snapshot current;
+
+    MessageStore(int initialCapacity) {
+        this.items = new Message[Math.max(16, initialCapacity)];
+        Metrics.register("messages.store.size", () -> {
+            Snapshot snapshot = current;
+            return snapshot == null ? 0 : snapshot.size();
+        });
+        Metrics.register("messages.store.hot", () -> {
+            Snapshot snapshot = current;
+            return snapshot == null ? 0 : snapshot.hotSize();
+        });
+        Metrics.register("messages.store.segments", () -> {
+            Snapshot snapshot = current;
+            return snapshot == null ? 0 : snapshot.segments.size();
+        });
+        Metrics.register("messages.store.outOfOrder", outOfOrder::get);
+    }
+
+    // 当前快照，尚未加载时为null
+    Snapshot snapshot() {
+        return current;
+    }
+
+    // 以热区留言（任意顺序）和已有冷段（新到旧）初始化存储；调用方需保证同一时刻只有一个写者
+    void load(List<Message> messages, List<MessageSegments.Segment> sealed) {
+        for (Message message : messages) {
+            message.preEncode();
+        }
+        Message[] loaded = messages.toArray(new Message[Math.max(items.length, messages.size() * 2)]);
+        Arrays.sort(loaded, 0, messages.size(), OLDEST_FIRST);
+        items = loaded;
+        size = messages.size();
+        setSegments(new ArrayList<>(sealed));
+        publish();
+    }
+
+    // 插入一批留言，只发布一次快照；调用方需保证同一时刻只有一个写者
+    void addAll(List<Message> messages) {
+        for (Message message : messages) {
+            insert(message);
+        }
+        publish();
+    }
+
+    // 把热区中最旧的count条替换为已落盘的冷段；调用方需保证同一时刻只有一个写者
+    void seal(int count, MessageSegments.Segment segment) {
+        removeOldest(count);
+        List<MessageSegments.Segment> sealed = new ArrayList<>(segments.size() + 1);
+        sealed.add(segment);
+        sealed.addAll(segments);
+        setSegments(sealed);
+        publish();
+    }
+
+    // 丢弃热区中最旧的count条（这些留言已由其他存储保存）；调用方需保证同一时刻只有一个写者
+    void trim(int count) {
+        removeOldest(count);
+        publish();
+    }
+
+    private void removeOldest(int count) {
+        // 旧快照仍引用原数组，剩余留言复制到新数组
+        Message[] remaining = new Message[items.length];
+        System.arraycopy(items, count, remaining, 0, size - count);
+        items = remaining;
+        size -= count;
+    }
+
+    // 发布前编码好JSON，此后读请求只复制字节
+    private void insert(Message message) {
+        message.preEncode();
+        if (size == 0 || OLDEST_FIRST.compare(items[size - 1], message) <= 0) {
+            // 常见情况：新留言最新，写入已发布长度之外的位置，旧快照看不到该位置
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = message;
+        } else {
+            // 并发请求的时间戳可能乱序：插入中间会改动旧快照可见的区域，因此复制出新数组。
+            // 封存只取热区最旧的部分，乱序的留言仍然比冷段新
+            int index = Arrays.binarySearch(items, 0, size, message, OLDEST_FIRST);
+            index = index < 0 ? -index - 1 : index;
+            Message[] copy = new Message[size == items.length ? size * 2 : items.length];
+            System.arraycopy(items, 0, copy, 0, index);
+            copy[index] = message;
+            System.arraycopy(items, index, copy, index + 1, size - index);
+            items = copy;
+            size++;
+            outOfOrder.incrementAndGet();
+        }
+    }
+
+    // 冷段列表变化时重新计算各段在冷区中的起始位置，普通写入不需要
+    private void setSegments(List<MessageSegments.Segment> sealed) {
+        int[] starts = new int[sealed.size() + 1];
+        for (int i = 0; i < sealed.size(); i++) {
+            starts[i + 1] = starts[i] + sealed.get(i).count;
+        }
+        segments = Collections.unmodifiableList(sealed);
+        segmentStarts = starts;
+    }
+
+    private void publish() {
+        current = new Snapshot(items, size, segments, segmentStarts, ++version);
+    }
+
+    // 不可变的新到旧视图：先是热区，之后依次是各冷段；数组中[0, size)的元素发布后不再修改
+    static final class Snapshot extends AbstractList<Message> implements RandomAccess {
+        private final Message[] items;
+        private final int size;
+        private final List<MessageSegments.Segment> segments;
+        // segmentStarts[i]为第i个冷段在冷区中的起始位置，最后一项为冷区总条数
+        private final int[] segmentStarts;
+        final long version;
+
+        private Snapshot(Message[] items, int size, List<MessageSegments.Segment> segments,
+                         int[] segmentStarts, long version) {
+            this.items = items;
+            this.size = size;
+            this.segments = segments;
+            this.segmentStarts = segmentStarts;
+            this.version = version;
+        }
+
+        @Override
+        public Message get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            if (index < size) {
+                return items[size - 1 - index];
+            }
+            // 访问冷区时才加载对应的段
+            int cold = index - size;
+            int segment = Arrays.binarySearch(segmentStarts, cold);
+            segment = segment >= 0 ? segment : -segment - 2;
+            return segments.get(segment).get(cold - segmentStarts[segment]);
+        }
+
+        @Override
+        public int size() {
+            return size + segmentStarts[segmentStarts.length - 1];
+        }
+
+        // 热区条数，位于视图的[0, hotSize())
+        int hotSize() {
+            return size;
+        }
+
+        // 取一页（新到旧）：before从游标之后开始，after取紧邻游标、比游标新的limit条
+        MessageRepository.Page page(int limit, MessageCursor before, MessageCursor after) {
+            int from;
+            int to;
+            if (before != null) {
+                from = firstOlderThan(before);
+                to = Math.min(size(), from + limit);
+            } else if (after != null) {
+                to = firstNotNewerThan(after);
+                from = Math.max(0, to - limit);
+            } else {
+                from = 0;
+                to = Math.min(size(), limit);
+            }
+            return new MessageRepository.Page(subList(from, to), to > from && to < size(), to > from && from > 0);
+        }
+
+        // 游标对应的留言，不存在时返回null
+        Message find(MessageCursor cursor) {
+            int index = firstNotNewerThan(cursor);
+            if (index < size()) {
+                Message message = get(index);
+                if (cursor.compareTo(message) == 0) {
+                    return message;
+                }
+            }
+            return null;
+        }
+
+        // 在同一快照中逐个查找，结果与游标一一对应
+        List<Message> findAll(List<MessageCursor> cursors) {
+            List<Message> found = new ArrayList<>(cursors.size());
+            for (MessageCursor cursor : cursors) {
+                found.add(find(cursor));
+            }
+            return found;
+        }
+
+        // 第一个比游标旧的位置：先按各层最旧一条的游标确定所在层，只在该层内二分查找，不加载之前的冷段；
+        // 冷段内只比较映射中的键，只有返回的那一页才解码
+        int firstOlderThan(MessageCursor cursor) {
+            if (size > 0 && cursor.compareTo(items[0]) < 0) {
+                return MessageCursor.firstOlderThan(this, 0, size, cursor);
+            }
+            int i = firstSegmentReaching(cursor, false);
+            if (i == segments.size()) {
+                return size();
+            }
+            return size + segmentStarts[i] + segments.get(i).firstOlderThan(cursor);
+        }
+
+        // 第一个不比游标新的位置，查找方式同firstOlderThan
+        int firstNotNewerThan(MessageCursor cursor) {
+            if (size > 0 && cursor.compareTo(items[0]) <= 0) {
+                return MessageCursor.firstNotNewerThan(this, 0, size, cursor);
+            }
+            int i = firstSegmentReaching(cursor, true);
+            if (i == segments.size()) {
+                return size();
+            }
+            return size + segmentStarts[i] + segments.get(i).firstNotNewerThan(cursor);
+        }
+
+        // 第一个最旧留言比游标旧（inclusive时为不比游标新）的冷段；冷段按新到旧排列，只比较索引中的游标
+        private int firstSegmentReaching(MessageCursor cursor, boolean inclusive) {
+            int low = 0;
+            int high = segments.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int compare = cursor.compareTo(segments.get(mid).oldest);
+                if (compare < 0 || (inclusive && compare == 0)) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 新留言的Server-Sent Events广播：每条留言只编码一次为"id/event/data"事件，所有订阅者共享同一字节数组。
+// 每个订阅者有一个有界的待发送队列，由其请求线程取出写出；队列满说明客户端读取过慢，
+// 直接断开该订阅者，不阻塞发布者也不无限占用内存，客户端重连时带上Last-Event-ID即可从断点继续。
+// 最近bufferEvents条事件保留在环形缓冲中用于续传，断点已不在缓冲中（或服务已重启）时发送reset事件，
+// 由客户端重新读取留言列表
+final class MessageStream {
+    // 心跳注释，定期写出以发现已断开的连接，并防止代理因空闲断开
+    static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESET = "event: reset\ndata: {}\n\n".getBytes(StandardCharsets.UTF_8);
+    // 放入队列表示订阅者已被断开
+    private static final Event DROPPED = new Event(null, new byte[0]);
+
+    private final int bufferEvents;
+    private final int maxSubscribers;
+    // 接收新事件的订阅者；被断开的订阅者从中移除
+    private final Set<Subscription> subscribers = new CopyOnWriteArraySet<>();
+    // 尚未结束的连接数，包括已断开但写出线程仍阻塞在套接字上的订阅者，由this保护；maxSubscribers限制的是它
+    private int connections;
+    // 最近发布的事件，旧到新；由this保护，订阅与发布互斥，续传的事件不会与新事件重复或遗漏
+    private final ArrayDeque<Event> recent = new ArrayDeque<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+
+    MessageStream(int bufferEvents, int maxSubscribers) {
+        this.bufferEvents = Math.max(1, bufferEvents);
+        this.maxSubscribers = maxSubscribers;
+        Metrics.register("stream.subscribers", subscribers::size);
+        Metrics.register("stream.connections", () -> {
+            synchronized (this) {
+                return connections;
+            }
+        });
+        Metrics.register("stream.published", published::get);
+        Metrics.register("stream.dropped", dropped::get);
+        Metrics.register("stream.resets", resets::get);
+    }
+
+    // 编码事件并放入每个订阅者的队列，不等待写出
+    void publish(Message message) {
+        Event event = new Event(message.getId(), encode(message));
+        synchronized (this) {
+            recent.addLast(event);
+            if (recent.size() > bufferEvents) {
+                recent.removeFirst();
+            }
+            for (Subscription subscription : subscribers) {
+                if (!subscription.queue.offer(event)) {
+                    drop(subscription);
+                }
+            }
+        }
+        published.incrementAndGet();
+    }
+
+    // 新建订阅；lastEventId非null时先放入其后的事件，找不到该事件时放入reset。订阅者已满时返回null
+    synchronized Subscription subscribe(String lastEventId) {
+        if (connections >= maxSubscribers) {
+            return null;
+        }
+        Subscription subscription = new Subscription(bufferEvents + 1);
+        if (lastEventId != null) {
+            List<Event> missed = since(lastEventId);
+            if (missed == null) {
+                resets.incrementAndGet();
+                subscription.queue.add(new Event(null, RESET));
+            } else {
+                subscription.queue.addAll(missed);
+            }
+        }
+        subscribers.add(subscription);
+        connections++;
+        return subscription;
+    }
+
+    // 连接结束时调用一次
+    synchronized void unsubscribe(Subscription subscription) {
+        subscribers.remove(subscription);
+        connections--;
+    }
+
+    // 环形缓冲中lastEventId之后的事件；不在缓冲中时返回null
+    private List<Event> since(String lastEventId) {
+        List<Event> missed = new ArrayList<>();
+        Iterator<Event> newestFirst = recent.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Event event = newestFirst.next();
+            if (lastEventId.equals(event.id)) {
+                Collections.reverse(missed);
+                return missed;
+            }
+            missed.add(event);
+        }
+        return null;
+    }
+
+    private void drop(Subscription subscription) {
+        subscribers.remove(subscription);
+        subscription.dropped = true;
+        subscription.queue.clear();
+        subscription.queue.offer(DROPPED);
+        dropped.incrementAndGet();
+    }
+
+    // "id: <id>\nevent: message\ndata: <留言JSON>\n\n"；JSON中的换行已转义，只占一行data
+    private static byte[] encode(Message message) {
+        message.preEncode();
+        ByteBuffer json = message.getEncoded();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.remaining() + 64);
+        byte[] head = ("id: " + message.getId() + "\nevent: message\ndata: ").getBytes(StandardCharsets.UTF_8);
+        out.write(head, 0, head.length);
+        while (json.hasRemaining()) {
+            out.write(json.get());
+        }
+        out.write('\n');
+        out.write('\n');
+        return out.toByteArray();
+    }
+
+    private static final class Event {
+        final String id;
+        final byte[] bytes;
+
+        Event(String id, byte[] bytes) {
+            this.id = id;
+            this.bytes = bytes;
+        }
+    }
+
+    // 一个订阅者的待发送事件，只由其请求线程取出
+    static final class Subscription {
+        // 容量比环形缓冲多一个位置，续传全部缓冲事件后仍可放入断开标记
+        private final BlockingQueue<Event> queue;
+
+        // 被断开后由请求线程结束响应
+        private volatile boolean dropped;
+
+        private Subscription(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        // 等待下一个事件的字节，超时返回HEARTBEAT；已被断开时返回null
+        byte[] next(long timeoutMillis) throws InterruptedException {
+            if (dropped) {
+                return null;
+            }
+            Event event = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (event == null) {
+                return HEARTBEAT;
+            }
+            return event == DROPPED ? null : event.bytes;
+        }
+
+        // 不等待地取出下一个已排队的事件，没有或已被断开时返回null
+        byte[] poll() {
+            Event event = queue.poll();
+            return event == null || event == DROPPED ? null : event.bytes;
+        }
+    }
+}
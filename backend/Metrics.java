@@ -0,0 +1,28 @@
+package com.resume.message;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+// 运行指标注册表：各组件登记计数器，由/metrics接口统一以JSON输出
+final class Metrics {
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+    
+    private Metrics() {
+    }
+    
+    static void register(String name, LongSupplier supplier) {
+        GAUGES.put(name, supplier);
+    }
+    
+    static String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet()) {
+            if (json.length() > 1) {
+                json.append(",");
+            }
+            json.append("\"").append(gauge.getKey()).append("\":").append(gauge.getValue().getAsLong());
+        }
+        return json.append("}").toString();
+    }
+}
@@ -0,0 +1,1014 @@
+package com.resume.message;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// 基于Selector的非阻塞HTTP/1.1传输层
+// 若干事件循环线程负责连接的读写；完整解析出一个请求后交给与JdkHttpTransport相同的HttpHandler处理。
+// 同一连接上的请求按顺序处理（keep-alive与管线化），上一个响应写完之前不解析下一个请求。
+class NioHttpTransport implements HttpTransport {
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int RESPONSE_BUFFER_BYTES = 8 * 1024;
+    // 单个连接待发送数据超过该值时，处理器线程等待事件循环写出（背压）
+    private static final long WRITE_HIGH_WATER = 256 * 1024;
+    private static final byte[] CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final InetSocketAddress address;
+    private final Executor executor;
+    private final int maxRequestBytes;
+    private final long idleTimeoutMillis;
+    private final Map<String, NioContext> contexts = new ConcurrentHashMap<>();
+    private final EventLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+    private int nextLoop;
+
+    // executor为null时处理器直接在事件循环线程上执行（对应single模式）
+    NioHttpTransport(InetSocketAddress address, Executor executor, int loopThreads,
+                     int maxRequestBytes, int idleTimeoutSeconds) {
+        this.address = address;
+        this.executor = executor;
+        this.maxRequestBytes = maxRequestBytes;
+        this.idleTimeoutMillis = idleTimeoutSeconds * 1000L;
+        this.loops = new EventLoop[Math.max(1, loopThreads)];
+    }
+
+    @Override
+    public void createContext(String path, HttpHandler handler) {
+        contexts.put(path, new NioContext(path, handler));
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+
+        running = true;
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop("nio-loop-" + (i + 1));
+        }
+        // 第一个事件循环同时负责accept，再把新连接轮询分配给各事件循环
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("关闭监听端口失败: " + e.getMessage());
+        }
+    }
+
+    // 最长前缀匹配，与HttpServer一致
+    private NioContext findContext(String path) {
+        NioContext best = null;
+        for (NioContext context : contexts.values()) {
+            if (path.startsWith(context.path)
+                    && (best == null || context.path.length() > best.path.length())) {
+                best = context;
+            }
+        }
+        return best;
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            final EventLoop loop = loops[nextLoop++ % loops.length];
+            final SocketChannel accepted = channel;
+            loop.execute(() -> loop.register(accepted));
+        }
+    }
+
+    // 事件循环：一个Selector + 一个任务队列，连接状态只在本线程内修改
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final Set<Connection> connections = new HashSet<>();
+        long lastSweep = System.currentTimeMillis();
+
+        EventLoop(String name) throws IOException {
+            selector = Selector.open();
+            // 非守护线程：与HttpServer的分发线程一样维持进程存活
+            thread = new Thread(this, name);
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.add(connection);
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(1000);
+                    runTasks();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.attachment() == null) {
+                            accept();
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isWritable()) {
+                                connection.flushOutput();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable();
+                            }
+                        } catch (IOException | CancelledKeyException e) {
+                            connection.close();
+                        } catch (RuntimeException e) {
+                            // 单个连接的意外错误只关闭该连接，不能终止整个事件循环
+                            System.err.println("连接处理异常: " + e);
+                            connection.close();
+                        }
+                    }
+                    sweepIdle();
+                } catch (IOException e) {
+                    System.err.println("事件循环异常: " + e.getMessage());
+                }
+            }
+            for (Connection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+            closeQuietly(selector);
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("事件循环任务异常: " + e);
+                }
+            }
+        }
+
+        // 关闭长时间空闲（无进行中的请求）的keep-alive连接
+        private void sweepIdle() {
+            long now = System.currentTimeMillis();
+            if (now - lastSweep < 1000) {
+                return;
+            }
+            lastSweep = now;
+            for (Connection connection : new ArrayList<>(connections)) {
+                if (connection.current == null && connection.output.isEmpty()
+                        && now - connection.lastActive > idleTimeoutMillis) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    // 单个TCP连接；除标注的方法外只在所属事件循环线程上访问
+    private final class Connection {
+        final EventLoop loop;
+        final SocketChannel channel;
+        final InetSocketAddress localAddress;
+        final InetSocketAddress remoteAddress;
+        final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        SelectionKey key;
+        ByteBuffer input = ByteBuffer.allocate(4096);
+        NioExchange current;
+        boolean completePending;
+        boolean keepAliveAfterComplete;
+        boolean closeAfterFlush;
+        boolean inputClosed;
+        boolean continueSent;
+        boolean parsing;
+        long lastActive = System.currentTimeMillis();
+        // 以下两个字段跨线程访问，受this监视器保护
+        long pendingBytes;
+        volatile boolean closed;
+
+        Connection(EventLoop loop, SocketChannel channel) throws IOException {
+            this.loop = loop;
+            this.channel = channel;
+            this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+            this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+        }
+
+        void onReadable() throws IOException {
+            if (!input.hasRemaining()) {
+                input = grow(input, input.capacity() * 2);
+            }
+            int read = channel.read(input);
+            if (read < 0) {
+                inputClosed = true;
+                if (current == null && output.isEmpty()) {
+                    close();
+                } else {
+                    setInterest(SelectionKey.OP_READ, false);
+                }
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            processInput();
+        }
+
+        // 循环解析缓冲区中已到达的请求；有请求在处理时暂停解析，保证响应顺序
+        void processInput() throws IOException {
+            parsing = true;
+            try {
+                while (current == null && !closed && !closeAfterFlush && parseRequest()) {
+                    // parseRequest已分派请求；处理器在本线程执行完时继续解析下一个
+                }
+            } finally {
+                parsing = false;
+            }
+            if (current == null && !closed && inputClosed && output.isEmpty()) {
+                close();
+            }
+        }
+
+        private boolean parseRequest() throws IOException {
+            byte[] buf = input.array();
+            int limit = input.position();
+            int start = 0;
+            // 管线化请求之间允许出现多余的空行
+            while (start + 1 < limit && buf[start] == '\r' && buf[start + 1] == '\n') {
+                start += 2;
+            }
+            int headerEnd = indexOfHeaderEnd(buf, start, limit);
+            if (headerEnd < 0) {
+                consume(start);
+                if (limit - start >= MAX_HEADER_BYTES) {
+                    reject(431, "请求头过大");
+                }
+                return false;
+            }
+
+            String[] lines = new String(buf, start, headerEnd - start, StandardCharsets.ISO_8859_1).split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/")) {
+                reject(400, "请求行格式错误");
+                return false;
+            }
+            URI uri;
+            try {
+                uri = new URI(requestLine[1]);
+            } catch (Exception e) {
+                reject(400, "请求地址格式错误");
+                return false;
+            }
+            // 只接受以"/"开头的路径形式；mailto:x等不透明URI没有路径，*只用于整个服务器的OPTIONS
+            if (!requestLine[1].startsWith("/") || uri.getPath() == null) {
+                reject(400, "请求地址格式错误");
+                return false;
+            }
+            Headers headers = new Headers();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    reject(400, "请求头格式错误");
+                    return false;
+                }
+                headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+            }
+
+            if (headers.containsKey("Transfer-encoding")) {
+                reject(411, "请求体需要提供Content-Length");
+                return false;
+            }
+            long contentLength = 0;
+            String lengthHeader = headers.getFirst("Content-length");
+            if (lengthHeader != null) {
+                try {
+                    contentLength = Long.parseLong(lengthHeader);
+                } catch (NumberFormatException e) {
+                    contentLength = -1;
+                }
+                if (contentLength < 0) {
+                    reject(400, "Content-Length无效");
+                    return false;
+                }
+            }
+            if (contentLength > maxRequestBytes) {
+                reject(413, "请求体过大");
+                return false;
+            }
+
+            int bodyStart = headerEnd + 4;
+            int total = bodyStart + (int) contentLength;
+            if (limit < total) {
+                consume(start);
+                if (input.capacity() < total - start) {
+                    input = grow(input, total - start);
+                }
+                if (!continueSent && "100-continue".equalsIgnoreCase(headers.getFirst("Expect"))) {
+                    continueSent = true;
+                    enqueue(ByteBuffer.wrap(CONTINUE_RESPONSE));
+                }
+                return false;
+            }
+
+            byte[] body = Arrays.copyOfRange(buf, bodyStart, total);
+            consume(total);
+            continueSent = false;
+
+            String version = requestLine[2];
+            String connectionHeader = headers.getFirst("Connection");
+            boolean keepAlive = "HTTP/1.1".equals(version)
+                    ? !"close".equalsIgnoreCase(connectionHeader)
+                    : "keep-alive".equalsIgnoreCase(connectionHeader);
+            dispatch(new NioExchange(this, requestLine[0], uri, version, headers, body, keepAlive));
+            return true;
+        }
+
+        private void consume(int count) {
+            if (count == 0) {
+                return;
+            }
+            byte[] buf = input.array();
+            int remaining = input.position() - count;
+            System.arraycopy(buf, count, buf, 0, remaining);
+            input.position(remaining);
+        }
+
+        private void dispatch(final NioExchange exchange) {
+            current = exchange;
+            // 处理期间暂停读事件，后续管线化请求留在缓冲区或内核中
+            setInterest(SelectionKey.OP_READ, false);
+            NioContext context = findContext(exchange.getRequestURI().getPath());
+            if (context == null) {
+                exchange.context = new NioContext("/", notFound -> {
+                    notFound.sendResponseHeaders(404, -1);
+                    notFound.close();
+                });
+            } else {
+                exchange.context = context;
+            }
+            if (executor == null) {
+                exchange.run();
+                return;
+            }
+            try {
+                executor.execute(exchange::run);
+            } catch (RejectedExecutionException e) {
+                current = null;
+                reject(503, "服务器繁忙");
+            }
+        }
+
+        // 直接返回错误并在写完后关闭连接
+        private void reject(int code, String message) {
+            byte[] body = message.getBytes(StandardCharsets.UTF_8);
+            String head = "HTTP/1.1 " + code + " " + reasonPhrase(code) + "\r\n"
+                    + "Content-Type: text/plain; charset=UTF-8\r\n"
+                    + "Content-Length: " + body.length + "\r\n"
+                    + "Connection: close\r\n\r\n";
+            byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+            ByteBuffer buffer = ByteBuffer.allocate(headBytes.length + body.length);
+            buffer.put(headBytes).put(body).flip();
+            closeAfterFlush = true;
+            setInterest(SelectionKey.OP_READ, false);
+            enqueue(buffer);
+        }
+
+        // 可在任意线程调用：交给事件循环发送，超过水位时阻塞等待
+        void send(final ByteBuffer buffer) throws IOException {
+            if (closed) {
+                throw new IOException("连接已关闭");
+            }
+            synchronized (this) {
+                pendingBytes += buffer.remaining();
+            }
+            if (loop.inLoop()) {
+                enqueue(buffer);
+                return;
+            }
+            loop.execute(() -> enqueue(buffer));
+            synchronized (this) {
+                while (pendingBytes > WRITE_HIGH_WATER && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("等待写出时被中断");
+                    }
+                }
+            }
+            if (closed) {
+                throw new IOException("连接已关闭");
+            }
+        }
+
+        // 可在任意线程调用：当前响应的所有数据已提交
+        void complete(final boolean keepAlive) {
+            if (loop.inLoop()) {
+                onComplete(keepAlive);
+            } else {
+                loop.execute(() -> onComplete(keepAlive));
+            }
+        }
+
+        // 可在任意线程调用
+        void abort() {
+            if (loop.inLoop()) {
+                close();
+            } else {
+                loop.execute(this::close);
+            }
+        }
+
+        private void onComplete(boolean keepAlive) {
+            if (closed) {
+                return;
+            }
+            completePending = true;
+            keepAliveAfterComplete = keepAlive;
+            try {
+                flushOutput();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void enqueue(ByteBuffer buffer) {
+            if (closed) {
+                return;
+            }
+            output.add(buffer);
+            try {
+                flushOutput();
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        void flushOutput() throws IOException {
+            while (!output.isEmpty()) {
+                ByteBuffer head = output.peek();
+                int written = channel.write(head);
+                if (written > 0) {
+                    releasePending(written);
+                }
+                if (head.hasRemaining()) {
+                    setInterest(SelectionKey.OP_WRITE, true);
+                    return;
+                }
+                output.poll();
+            }
+            setInterest(SelectionKey.OP_WRITE, false);
+            lastActive = System.currentTimeMillis();
+
+            if (closeAfterFlush) {
+                close();
+            } else if (completePending) {
+                completePending = false;
+                current = null;
+                if (!keepAliveAfterComplete) {
+                    close();
+                    return;
+                }
+                if (!inputClosed) {
+                    setInterest(SelectionKey.OP_READ, true);
+                }
+                // 处理器在事件循环线程内同步完成时，由外层processInput继续解析，避免递归
+                if (!parsing) {
+                    processInput();
+                }
+            }
+        }
+
+        private synchronized void releasePending(int bytes) {
+            // CONTINUE等事件循环内部写入的数据不计入pendingBytes，避免出现负数
+            pendingBytes = Math.max(0, pendingBytes - bytes);
+            if (pendingBytes <= WRITE_HIGH_WATER) {
+                notifyAll();
+            }
+        }
+
+        private void setInterest(int op, boolean enabled) {
+            if (key == null || !key.isValid()) {
+                return;
+            }
+            int ops = key.interestOps();
+            key.interestOps(enabled ? ops | op : ops & ~op);
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            loop.connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+        }
+    }
+
+    // HttpExchange的NIO实现：请求体已完整读入内存，响应通过Connection异步写出
+    private final class NioExchange extends HttpExchange {
+        private final Connection connection;
+        private final String method;
+        private final URI uri;
+        private final String protocol;
+        private final Headers requestHeaders;
+        private final Headers responseHeaders = new Headers();
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final boolean requestKeepAlive;
+        private NioContext context;
+        private InputStream requestBody;
+        private OutputStream responseBodyOverride;
+        private ResponseStream responseBody;
+        private int responseCode = -1;
+        private boolean finished;
+
+        NioExchange(Connection connection, String method, URI uri, String protocol,
+                    Headers requestHeaders, byte[] body, boolean keepAlive) {
+            this.connection = connection;
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.requestHeaders = requestHeaders;
+            this.requestBody = new ByteArrayInputStream(body);
+            this.requestKeepAlive = keepAlive;
+        }
+
+        void run() {
+            try {
+                context.handler.handle(this);
+            } catch (Throwable t) {
+                System.err.println("请求处理失败: " + t);
+                if (responseCode == -1) {
+                    try {
+                        sendResponseHeaders(500, -1);
+                    } catch (IOException ignored) {
+                        // 连接已不可用
+                    }
+                } else if (!responseBody.closed) {
+                    // 响应写到一半，只能断开连接
+                    finished = true;
+                    connection.abort();
+                    return;
+                }
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return responseHeaders;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return method;
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return context;
+        }
+
+        @Override
+        public void close() {
+            if (finished) {
+                return;
+            }
+            if (responseCode == -1) {
+                // 与HttpServer一致：未发送响应头就关闭时直接断开连接
+                finished = true;
+                connection.abort();
+                return;
+            }
+            try {
+                responseBody.close();
+            } catch (IOException e) {
+                finished = true;
+                connection.abort();
+            }
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return requestBody;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            if (responseBodyOverride != null) {
+                return responseBodyOverride;
+            }
+            if (responseBody == null) {
+                // 未发送响应头前先返回缓冲流，sendResponseHeaders之后才真正输出
+                responseBody = new ResponseStream(this);
+            }
+            return responseBody;
+        }
+
+        @Override
+        public void sendResponseHeaders(int code, long length) throws IOException {
+            if (responseCode != -1) {
+                throw new IOException("响应头已发送");
+            }
+            responseCode = code;
+            if (responseBody == null) {
+                responseBody = new ResponseStream(this);
+            }
+
+            boolean noLengthAllowed = code == 304 || code == 204 || code < 200;
+            boolean keepAlive = requestKeepAlive && running;
+            StringBuilder head = new StringBuilder(256);
+            head.append("HTTP/1.1 ").append(code).append(' ').append(reasonPhrase(code)).append("\r\n");
+            if (!responseHeaders.containsKey("Date")) {
+                head.append("Date: ").append(httpDate()).append("\r\n");
+            }
+            if (noLengthAllowed) {
+                responseBody.bodyless = true;
+            } else if (length == -1) {
+                head.append("Content-Length: 0\r\n");
+                responseBody.bodyless = true;
+            } else if (length == 0 && !"HTTP/1.1".equals(protocol)) {
+                // HTTP/1.0不支持chunked：不加分块帧，关闭连接表示响应体结束
+                keepAlive = false;
+                responseBody.bodyless = "HEAD".equals(method);
+            } else if (length == 0) {
+                head.append("Transfer-Encoding: chunked\r\n");
+                responseBody.chunked = !"HEAD".equals(method);
+                responseBody.bodyless = "HEAD".equals(method);
+            } else {
+                head.append("Content-Length: ").append(length).append("\r\n");
+                responseBody.remaining = length;
+                responseBody.bodyless = "HEAD".equals(method);
+            }
+            if (!keepAlive) {
+                head.append("Connection: close\r\n");
+            }
+            for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+                for (String value : header.getValue()) {
+                    head.append(header.getKey()).append(": ").append(value).append("\r\n");
+                }
+            }
+            head.append("\r\n");
+            responseBody.keepAlive = keepAlive;
+            responseBody.head = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+            if (responseBody.bodyless) {
+                responseBody.flush();
+            }
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return connection.remoteAddress;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return connection.localAddress;
+        }
+
+        @Override
+        public String getProtocol() {
+            return protocol;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void setStreams(InputStream input, OutputStream output) {
+            if (input != null) {
+                requestBody = input;
+            }
+            if (output != null) {
+                responseBodyOverride = output;
+            }
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return null;
+        }
+    }
+
+    // 响应体输出流：缓冲写入，按需使用chunked编码，写满或flush时提交给连接
+    private final class ResponseStream extends OutputStream {
+        private final NioExchange exchange;
+        private final byte[] buffer = new byte[RESPONSE_BUFFER_BYTES];
+        private int count;
+        byte[] head;
+        boolean chunked;
+        boolean bodyless;
+        boolean keepAlive;
+        long remaining = -1;
+        boolean closed;
+
+        ResponseStream(NioExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("响应流已关闭");
+            }
+            if (head == null) {
+                throw new IOException("尚未发送响应头");
+            }
+            if (bodyless || length == 0) {
+                return;
+            }
+            if (remaining >= 0) {
+                if (length > remaining) {
+                    throw new IOException("写入字节数超过Content-Length");
+                }
+                remaining -= length;
+            }
+            if (length > buffer.length - count) {
+                flush();
+                if (length >= buffer.length) {
+                    submit(data, offset, length);
+                    return;
+                }
+            }
+            System.arraycopy(data, offset, buffer, count, length);
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (head == null || (count == 0 && head.length == 0)) {
+                return;
+            }
+            submit(buffer, 0, count);
+            count = 0;
+        }
+
+        // 响应头与第一段数据合并到同一个缓冲区发送
+        private void submit(byte[] data, int offset, int length) throws IOException {
+            byte[] chunkHead = chunked && length > 0
+                    ? (Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1)
+                    : new byte[0];
+            int chunkTail = chunked && length > 0 ? 2 : 0;
+            ByteBuffer out = ByteBuffer.allocate(head.length + chunkHead.length + length + chunkTail);
+            out.put(head).put(chunkHead).put(data, offset, length);
+            if (chunkTail > 0) {
+                out.put((byte) '\r').put((byte) '\n');
+            }
+            out.flip();
+            head = new byte[0];
+            if (out.hasRemaining()) {
+                connection().send(out);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (head == null) {
+                throw new IOException("尚未发送响应头");
+            }
+            closed = true;
+            flush();
+            if (chunked) {
+                connection().send(ByteBuffer.wrap(LAST_CHUNK));
+            }
+            exchange.finished = true;
+            // 固定长度响应未写满时帧已损坏，必须关闭连接
+            connection().complete(keepAlive && remaining <= 0);
+        }
+
+        private Connection connection() {
+            return exchange.connection;
+        }
+    }
+
+    private static final class NioContext extends HttpContext {
+        private final String path;
+        private HttpHandler handler;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private final List<Filter> filters = new ArrayList<>();
+        private Authenticator authenticator;
+
+        NioContext(String path, HttpHandler handler) {
+            this.path = path;
+            this.handler = handler;
+        }
+
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+
+        @Override
+        public void setHandler(HttpHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public HttpServer getServer() {
+            // NIO实现不基于HttpServer
+            return null;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public List<Filter> getFilters() {
+            return filters;
+        }
+
+        @Override
+        public Authenticator setAuthenticator(Authenticator authenticator) {
+            Authenticator previous = this.authenticator;
+            this.authenticator = authenticator;
+            return previous;
+        }
+
+        @Override
+        public Authenticator getAuthenticator() {
+            return authenticator;
+        }
+    }
+
+    private static int indexOfHeaderEnd(byte[] buf, int from, int limit) {
+        for (int i = from; i + 3 < limit; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // 关闭失败无需处理
+        }
+    }
+
+    // Date响应头按秒缓存
+    private static volatile CachedDate cachedDate = new CachedDate(0, "");
+
+    private static String httpDate() {
+        long second = System.currentTimeMillis() / 1000;
+        CachedDate date = cachedDate;
+        if (date.second != second) {
+            date = new CachedDate(second, DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                    ZonedDateTime.now(ZoneOffset.UTC)));
+            cachedDate = date;
+        }
+        return date.value;
+    }
+
+    private static final class CachedDate {
+        final long second;
+        final String value;
+
+        CachedDate(long second, String value) {
+            this.second = second;
+            this.value = value;
+        }
+    }
+
+    private static String reasonPhrase(int code) {
+        switch (code) {
+            case 200: return "OK";
+            case 204: return "No Content";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 411: return "Length Required";
+            case 413: return "Payload Too Large";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 503: return "Service Unavailable";
+            default: return "";
+        }
+    }
+}
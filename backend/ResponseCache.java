@@ -0,0 +1,126 @@
+package com.resume.message;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 已编码响应缓存：按留言存储版本号保存完整的UTF-8响应体，版本变化前所有GET共享同一字节数组
+// 压缩后的版本与原始响应体一起缓存，每个版本每种编码只压缩一次
+final class ResponseCache {
+    // 版本号在进程重启后从0开始，ETag加入启动时间前缀避免重启前后误判为相同内容
+    private static final String ETAG_PREFIX = Long.toHexString(System.currentTimeMillis());
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong compressions = new AtomicLong();
+    private volatile Entry current;
+    
+    ResponseCache(String metricsPrefix) {
+        Metrics.register(metricsPrefix + ".hits", hits::get);
+        Metrics.register(metricsPrefix + ".misses", misses::get);
+        Metrics.register(metricsPrefix + ".compressions", compressions::get);
+    }
+    
+    // 命中返回缓存项，未命中（版本不一致）返回null并计数
+    Entry get(long version) {
+        Entry entry = current;
+        if (entry != null && entry.version == version) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+    
+    // 并发重建时只保留版本号最新的结果
+    Entry put(long version, byte[] body, long lastModified) {
+        Entry entry = new Entry(version, body, lastModified, compressions);
+        synchronized (this) {
+            Entry existing = current;
+            if (existing == null || existing.version <= version) {
+                current = entry;
+            }
+        }
+        return entry;
+    }
+    
+    static final class Entry {
+        final long version;
+        final byte[] body;
+        // 强校验ETag，取自存储版本号
+        final String etag;
+        // 最新一条留言的创建时间（毫秒，按秒截断），未知时为-1
+        final long lastModified;
+        final String lastModifiedHeader;
+        private final AtomicLong compressions;
+        private byte[] gzipBody;
+        private byte[] deflateBody;
+        
+        Entry(long version, byte[] body, long lastModified, AtomicLong compressions) {
+            this.version = version;
+            this.body = body;
+            this.compressions = compressions;
+            this.etag = "\"" + ETAG_PREFIX + "-" + version + "\"";
+            this.lastModified = lastModified < 0 ? -1 : lastModified / 1000 * 1000;
+            this.lastModifiedHeader = lastModified < 0 ? null
+                    : DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                            ZonedDateTime.ofInstant(Instant.ofEpochMilli(this.lastModified), ZoneOffset.UTC));
+        }
+        
+        // 指定编码的响应体，encoding为null时返回原始响应体；压缩结果按需生成后缓存
+        synchronized byte[] body(String encoding) throws IOException {
+            if (Compression.GZIP.equals(encoding)) {
+                if (gzipBody == null) {
+                    gzipBody = Compression.compress(body, encoding);
+                    compressions.incrementAndGet();
+                }
+                return gzipBody;
+            }
+            if (Compression.DEFLATE.equals(encoding)) {
+                if (deflateBody == null) {
+                    deflateBody = Compression.compress(body, encoding);
+                    compressions.incrementAndGet();
+                }
+                return deflateBody;
+            }
+            return body;
+        }
+        
+        // 不同内容编码是不同的表示，强ETag需要区分
+        String etag(String encoding) {
+            return encoding == null ? etag : etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+        }
+        
+        // 按RFC 7232判断条件请求是否可以返回304：If-None-Match优先，其次If-Modified-Since
+        boolean notModified(String ifNoneMatch, String ifModifiedSince) {
+            if (ifNoneMatch != null) {
+                for (String tag : ifNoneMatch.split(",")) {
+                    String candidate = tag.trim();
+                    if (candidate.startsWith("W/")) {
+                        candidate = candidate.substring(2);
+                    }
+                    if ("*".equals(candidate) || etag.equals(candidate)
+                            || candidate.equals(etag(Compression.GZIP)) || candidate.equals(etag(Compression.DEFLATE))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (ifModifiedSince != null && lastModified >= 0) {
+                try {
+                    long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                            .toInstant().toEpochMilli();
+                    return lastModified <= since;
+                } catch (DateTimeParseException e) {
+                    // 无法解析的日期按无条件请求处理
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -2,33 +2,218 @@ package com.resume.message;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpServer;
 
 import java.io.*;
 import java.net.InetSocketAddress;
-import java.nio.file.Files;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.regex.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SimpleMessageApplication {
     private static final int PORT = 9000;
+    // 快照文件，启动时在其基础上重放追加日志
     private static final String MESSAGES_FILE = "messages.json";
-    // 内存存储留言列表，用于阿里云函数计算环境
-    private static List<Message> memoryMessages = null;
+    // messages.format=binary时使用的二进制快照文件
+    private static final String MESSAGES_BINARY_FILE = "messages.bin";
+    private static final String MESSAGES_LOG_FILE = "messages.log";
+    // 冷段目录，保存热区之外的旧留言
+    private static final String MESSAGES_SEGMENTS_DIR = "messages.segments";
+    // 数据库写后缓冲的本地发件日志
+    private static final String MESSAGES_OUTBOX_FILE = "messages.outbox.log";
+    // 写后缓冲中无法写入数据库的留言（超长、违反约束等）
+    private static final String MESSAGES_DEAD_LETTER_FILE = "messages.deadletter.jsonl";
+    // 留言存储后端：file(本地文件，默认) / memory(仅内存，用于阿里云函数计算环境) / jdbc(SQL Server)
+    private static final String REPOSITORY = config("repository", "file");
+    private static final MessageRepository repository = createRepository(REPOSITORY);
+    // 新留言的id生成器；多个实例写入同一存储时每个实例需配置不同的node.id
+    private static final MessageIdGenerator ids = new MessageIdGenerator(configInt("node.id", 0));
+    // 请求体大小上限（字节），两种传输层共用
+    static final int MAX_REQUEST_BYTES = configInt("http.maxRequestBytes", 16 * 1024);
+    // 各字段的最大字符数，与SQLQuery1.sql中dbo.message的列长度一致（NVARCHAR按UTF-16单元计数）
+    static final int MAX_NAME_LENGTH = 50;
+    static final int MAX_EMAIL_LENGTH = 100;
+    static final int MAX_CONTENT_LENGTH = 500;
+    // 默认及最大分页大小
+    private static final int PAGE_SIZE = configInt("messages.pageSize", 100);
+    // GET /messages 的已编码响应缓存（不带分页参数的第一页）
+    private static final ResponseCache messagesResponseCache = new ResponseCache("messages.responseCache");
+    // 留言全文检索索引，启动时由已有留言建立，之后随新增留言更新；search.enabled=false时为null
+    private static final MessageSearchIndex searchIndex =
+            Boolean.parseBoolean(config("search.enabled", "true")) ? new MessageSearchIndex() : null;
+    // 请求执行模式：single(单线程分发，原行为) / pool(有界线程池) / virtual(每请求一个虚拟线程)
+    private static final String EXECUTOR = config("executor", "single");
+    // 新留言的实时推送（/messages/stream），保留最近的事件用于断线续传
+    private static final MessageStream messageStream = new MessageStream(
+            configInt("stream.bufferEvents", 256), streamSubscriberLimit());
+    // 推送连接空闲时写出心跳的间隔
+    private static final long STREAM_HEARTBEAT_MILLIS = configInt("stream.heartbeatSeconds", 15) * 1000L;
     
     public static void main(String[] args) throws IOException {
-        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        // 传输层：jdk(com.sun.net.httpserver.HttpServer) / nio(基于Selector的非阻塞实现)
+        String transportName = config("transport", "jdk");
+        HttpTransport transport = createTransport(transportName, new InetSocketAddress(PORT),
+                createExecutor(EXECUTOR));
         
         // 创建上下文，处理不同的API路径
-        server.createContext("/", new HomeHandler());
-        server.createContext("/messages", new MessageApiHandler()); // 处理GET和POST请求
+        transport.createContext("/", new HomeHandler());
+        transport.createContext("/messages", new MessageApiHandler()); // 处理GET和POST请求
+        transport.createContext("/messages/search", new SearchHandler());
+        transport.createContext("/messages/stream", new StreamHandler());
+        transport.createContext("/metrics", new MetricsHandler());
         
-        server.setExecutor(null);
-        server.start();
-        System.out.println("Server started on port " + PORT);
+        // 启动时加载已有留言（或检查数据库连接），而不是等到第一个请求
+        repository.open();
+        buildSearchIndex();
+        transport.start();
+        System.out.println("Server started on port " + PORT
+                + " (transport: " + transportName + ", executor: " + EXECUTOR
+                + ", repository: " + REPOSITORY + ")");
+    }
+    
+    // 根据配置创建留言存储后端
+    static MessageRepository createRepository(String name) {
+        if ("memory".equalsIgnoreCase(name)) {
+            return new MemoryMessageRepository();
+        }
+        if ("jdbc".equalsIgnoreCase(name)) {
+            JdbcConnectionPool pool = new JdbcConnectionPool(config("jdbc.url", null),
+                    config("jdbc.user", null), config("jdbc.password", null),
+                    configInt("jdbc.poolSize", 8), configInt("jdbc.acquireTimeoutMs", 5000));
+            JdbcMessageRepository database = new JdbcMessageRepository(pool, config("jdbc.table", "dbo.message"));
+            // 开启写后缓冲时新增留言先写入本地发件日志，由后台线程批量写入数据库
+            if (Boolean.parseBoolean(config("jdbc.writeBehind", "false"))) {
+                return new WriteBehindMessageRepository(database, Paths.get(MESSAGES_OUTBOX_FILE),
+                        Paths.get(MESSAGES_DEAD_LETTER_FILE));
+            }
+            return database;
+        }
+        if (!"file".equalsIgnoreCase(name)) {
+            System.err.println("未知的存储后端 " + name + "，改用file");
+        }
+        return new FileMessageRepository(Paths.get(MESSAGES_FILE), Paths.get(MESSAGES_BINARY_FILE),
+                Paths.get(MESSAGES_LOG_FILE), Paths.get(MESSAGES_SEGMENTS_DIR));
+    }
+    
+    // 分页读取全部已有留言，从旧到新加入检索索引：先向旧翻到最旧一条，再从它开始向新翻页，
+    // 任何时刻只持有一页留言
+    private static void buildSearchIndex() throws IOException {
+        if (searchIndex == null) {
+            return;
+        }
+        Message oldest = null;
+        MessageCursor before = null;
+        while (true) {
+            MessageRepository.Page page = repository.page(1000, before, null);
+            if (page.messages.isEmpty()) {
+                break;
+            }
+            oldest = page.messages.get(page.messages.size() - 1);
+            if (!page.hasOlder) {
+                break;
+            }
+            before = MessageCursor.of(oldest);
+        }
+        if (oldest == null) {
+            return;
+        }
+        searchIndex.add(oldest);
+        MessageCursor after = MessageCursor.of(oldest);
+        while (true) {
+            MessageRepository.Page page = repository.page(1000, null, after);
+            for (int i = page.messages.size() - 1; i >= 0; i--) {
+                searchIndex.add(page.messages.get(i));
+            }
+            if (!page.hasNewer || page.messages.isEmpty()) {
+                break;
+            }
+            after = MessageCursor.of(page.messages.get(0));
+        }
+    }
+    
+    // 每个推送连接占用一个请求线程：pool模式下最多占用一半线程，保证普通请求仍有线程处理
+    private static int streamSubscriberLimit() {
+        int limit = configInt("stream.maxSubscribers", 100);
+        if ("pool".equalsIgnoreCase(EXECUTOR)) {
+            limit = Math.min(limit, configInt("executor.threads", Runtime.getRuntime().availableProcessors() * 2) / 2);
+        }
+        return limit;
+    }
+    
+    // 根据配置创建传输层实现
+    static HttpTransport createTransport(String name, InetSocketAddress address, Executor executor) throws IOException {
+        if ("nio".equalsIgnoreCase(name)) {
+            return new NioHttpTransport(address, executor,
+                    configInt("nio.threads", Runtime.getRuntime().availableProcessors()),
+                    MAX_REQUEST_BYTES,
+                    configInt("nio.idleTimeout", 30));
+        }
+        if (!"jdk".equalsIgnoreCase(name)) {
+            System.err.println("未知的传输层 " + name + "，改用jdk");
+        }
+        return new JdkHttpTransport(address, executor);
+    }
+    
+    // 读取配置：优先使用JVM系统属性 -Dmessage.<key>，其次环境变量 MESSAGE_<KEY>
+    static String config(String key, String defaultValue) {
+        String value = System.getProperty("message." + key);
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getenv("MESSAGE_" + key.toUpperCase(Locale.ROOT).replace('.', '_'));
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+    
+    static int configInt(String key, int defaultValue) {
+        String value = config(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("配置项 " + key + " 不是有效整数，使用默认值 " + defaultValue + ": " + value);
+            return defaultValue;
+        }
+    }
+    
+    // 根据模式创建请求执行器，返回null表示沿用HttpServer自带的单个分发线程
+    static Executor createExecutor(String mode) {
+        if ("single".equalsIgnoreCase(mode)) {
+            return null;
+        }
+        if ("virtual".equalsIgnoreCase(mode)) {
+            try {
+                // 通过反射调用，保证在Java 8编译目标下仍可构建；运行在Java 21+时启用虚拟线程
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (Exception e) {
+                System.err.println("当前JVM不支持虚拟线程，改用有界线程池: " + e);
+            }
+        } else if (!"pool".equalsIgnoreCase(mode)) {
+            System.err.println("未知的执行模式 " + mode + "，改用有界线程池");
+        }
+        int threads = configInt("executor.threads", Runtime.getRuntime().availableProcessors() * 2);
+        int queueSize = configInt("executor.queue", 1000);
+        return newBoundedPool("message-worker", threads, queueSize);
+    }
+    
+    // 有界线程池：队列满时拒绝（抛出RejectedExecutionException）而不是无限堆积。不能交给调用方执行：
+    // 调用方是NIO事件循环或HttpServer的分发线程，在其上运行处理器会使所有其他连接停顿。
+    // nio传输层对被拒绝的请求返回503，jdk传输层（HttpServer）直接关闭该连接
+    static ThreadPoolExecutor newBoundedPool(final String namePrefix, int threads, int queueSize) {
+        final AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, namePrefix + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), factory,
+                new ThreadPoolExecutor.AbortPolicy());
     }
     
     // 首页处理器
@@ -43,6 +228,14 @@ public class SimpleMessageApplication {
         }
     }
     
+    // 运行指标处理器
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            sendJsonResponse(exchange, 200, "{\"code\":200,\"message\":\"获取成功\",\"data\":" + Metrics.toJson() + "}");
+        }
+    }
+    
     // 留言API处理器 - 处理GET和POST请求
     static class MessageApiHandler implements HttpHandler {
         @Override
@@ -50,7 +243,8 @@ public class SimpleMessageApplication {
             // 设置CORS头
             exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
             exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-            exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type, If-None-Match, If-Modified-Since");
+            exchange.getResponseHeaders().set("Access-Control-Expose-Headers", "ETag, Last-Modified");
             
             // 处理OPTIONS预检请求
             if ("OPTIONS".equals(exchange.getRequestMethod())) {
@@ -75,13 +269,41 @@ public class SimpleMessageApplication {
         private void handleGetMessages(HttpExchange exchange) throws IOException {
             exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
             
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            // 无法提供版本号的后端（数据库）不缓存，与分页请求走同一路径
+            if (query.containsKey("limit") || query.containsKey("before") || query.containsKey("after")
+                    || repository.version() < 0) {
+                handlePagedMessages(exchange, query);
+                return;
+            }
+            
             try {
-                List<Message> messages = loadMessages();
-                String response = "{\"code\":200,\"message\":\"获取成功\",\"data\":" + messagesToJson(messages) + "}";
+                ResponseCache.Entry entry = messagesResponse();
+                String encoding = Compression.negotiate(
+                        exchange.getRequestHeaders().getFirst("Accept-Encoding"), entry.body.length);
                 
-                exchange.sendResponseHeaders(200, response.getBytes("UTF-8").length);
+                // 条件请求：内容未变化时返回无响应体的304
+                exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+                exchange.getResponseHeaders().set("ETag", entry.etag(encoding));
+                if (entry.lastModifiedHeader != null) {
+                    exchange.getResponseHeaders().set("Last-Modified", entry.lastModifiedHeader);
+                }
+                // 允许浏览器缓存但每次都要重新验证，轮询时即可命中304
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                if (entry.notModified(exchange.getRequestHeaders().getFirst("If-None-Match"),
+                        exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                
+                byte[] response = entry.body(encoding);
+                if (encoding != null) {
+                    exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                }
+                exchange.sendResponseHeaders(200, response.length);
                 try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(response.getBytes("UTF-8"));
+                    os.write(response);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -94,21 +316,74 @@ public class SimpleMessageApplication {
             }
         }
         
+        // 游标分页：limit每页数量，before取比游标更旧的留言，after取紧邻游标的更新留言
+        private void handlePagedMessages(HttpExchange exchange, Map<String, String> query) throws IOException {
+            int limit;
+            MessageCursor before;
+            MessageCursor after;
+            try {
+                limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : PAGE_SIZE;
+                before = query.containsKey("before") ? MessageCursor.decode(query.get("before")) : null;
+                after = query.containsKey("after") ? MessageCursor.decode(query.get("after")) : null;
+            } catch (IllegalArgumentException e) {
+                sendJsonResponse(exchange, 400, "{\"code\":400,\"message\":\"分页参数无效\"}");
+                return;
+            }
+            if (before != null && after != null) {
+                sendJsonResponse(exchange, 400, "{\"code\":400,\"message\":\"before与after不能同时使用\"}");
+                return;
+            }
+            final MessageRepository.Page page;
+            try {
+                page = repository.page(Math.max(1, Math.min(limit, PAGE_SIZE)), before, after);
+            } catch (IllegalArgumentException e) {
+                sendJsonResponse(exchange, 400, "{\"code\":400,\"message\":\"分页参数无效\"}");
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+                sendJsonResponse(exchange, 500, "{\"code\":500,\"message\":\"服务器错误\"}");
+                return;
+            }
+            sendJsonStream(exchange, 200, writer -> writePage(writer, page));
+        }
+        
         private void handleAddMessage(HttpExchange exchange) throws IOException {
             try {
-                // 读取请求体
-                StringBuilder requestBodyBuilder = new StringBuilder();
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(exchange.getRequestBody(), "UTF-8"))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        requestBodyBuilder.append(line).append("\n");
-                    }
+                // 先按Content-Length拒绝过大的请求，不读取请求体
+                long declaredLength = contentLength(exchange);
+                if (declaredLength > MAX_REQUEST_BYTES) {
+                    sendJsonResponse(exchange, 413, "{\"code\":413,\"message\":\"请求体过大\"}");
+                    return;
                 }
-                String requestBody = requestBodyBuilder.toString();
                 
-                // 解析请求JSON
-                Map<String, String> requestMap = parseJsonToMap(requestBody);
+                // 读取请求体到池化缓冲区，直接在字节上解析JSON；声明了长度与未声明长度（chunked）的请求体相同处理
+                byte[] buffer = BufferPool.DEFAULT.acquire();
+                Map<String, String> requestMap;
+                try {
+                    byte[] body = buffer;
+                    int length;
+                    boolean tooLarge;
+                    try (InputStream in = exchange.getRequestBody()) {
+                        length = readBody(in, body, 0, Math.min(body.length, MAX_REQUEST_BYTES));
+                        if (length == body.length && length < MAX_REQUEST_BYTES) {
+                            // 只有http.maxRequestBytes配置得比池化缓冲区大、且请求体确实更大时才另外分配
+                            body = Arrays.copyOf(body, MAX_REQUEST_BYTES);
+                            length = readBody(in, body, length, MAX_REQUEST_BYTES);
+                        }
+                        // 读满上限后再读一个字节判断是否超限
+                        tooLarge = length == MAX_REQUEST_BYTES && in.read() >= 0;
+                    }
+                    if (tooLarge) {
+                        sendJsonResponse(exchange, 413, "{\"code\":413,\"message\":\"请求体过大\"}");
+                        return;
+                    }
+                    requestMap = parseJsonToMap(body, 0, length);
+                } catch (IllegalArgumentException e) {
+                    sendJsonResponse(exchange, 400, "{\"code\":400,\"message\":\"请求格式错误\"}");
+                    return;
+                } finally {
+                    BufferPool.DEFAULT.release(buffer);
+                }
                 
                 // 获取参数
                 String name = requestMap.get("name");
@@ -122,28 +397,32 @@ public class SimpleMessageApplication {
                     sendJsonResponse(exchange, 400, "{\"code\":400,\"message\":\"参数不能为空\"}");
                     return;
                 }
+                name = name.trim();
+                email = email.trim();
+                content = content.trim();
+                // 超过数据库列长度的留言无法保存；写后缓冲模式下要在返回成功之前拒绝，所有存储后端一致
+                if (name.length() > MAX_NAME_LENGTH || email.length() > MAX_EMAIL_LENGTH
+                        || content.length() > MAX_CONTENT_LENGTH) {
+                    sendJsonResponse(exchange, 400, "{\"code\":400,\"message\":\"参数过长：昵称最多" + MAX_NAME_LENGTH
+                            + "个字符，邮箱最多" + MAX_EMAIL_LENGTH + "个字符，留言最多" + MAX_CONTENT_LENGTH + "个字符\"}");
+                    return;
+                }
                 
                 // 创建留言对象
                 Message message = new Message();
-                message.setId(String.valueOf(System.currentTimeMillis()));
-                message.setName(name.trim());
-                message.setEmail(email.trim());
-                message.setContent(content.trim());
-                message.setCreateTime(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
-                
-                // 读取现有留言
-                List<Message> messages = loadMessages();
-                
-                // 添加新留言
-                messages.add(0, message);  // 添加到列表开头
+                message.setId(Long.toString(ids.next()));
+                message.setName(name);
+                message.setEmail(email);
+                message.setContent(content);
+                message.setCreateTimeMillis(currentSecondMillis());
+                // 交给存储、检索索引与推送之前编码好，此后留言不再被修改，各线程读到的都是完整的编码结果
+                message.preEncode();
                 
-                // 限制留言数量
-                if (messages.size() > 100) {
-                    messages = messages.subList(0, 100);
+                repository.add(message);
+                if (searchIndex != null) {
+                    searchIndex.add(message);
                 }
-                
-                // 保存留言
-                saveMessages(messages);
+                messageStream.publish(message);
                 
                 // 返回成功响应
                 sendJsonResponse(exchange, 200, "{\"code\":200,\"message\":\"留言成功\"}");
@@ -155,199 +434,432 @@ public class SimpleMessageApplication {
         }
     }
     
-    // 发送JSON响应
-    private static void sendJsonResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
-        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
-        exchange.sendResponseHeaders(statusCode, response.getBytes("UTF-8").length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes("UTF-8"));
+    // 全文检索处理器：GET /messages/search?q=关键词&limit=&offset=，结果按相关度排序
+    static class SearchHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, OPTIONS");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendJsonResponse(exchange, 405, "{\"code\":405,\"message\":\"不支持的请求方法\"}");
+                return;
+            }
+            if (searchIndex == null) {
+                sendJsonResponse(exchange, 404, "{\"code\":404,\"message\":\"未启用全文检索\"}");
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            List<String> terms = MessageSearchIndex.queryTerms(query.get("q"));
+            if (terms.isEmpty()) {
+                sendJsonResponse(exchange, 400, "{\"code\":400,\"message\":\"搜索关键词不能为空\"}");
+                return;
+            }
+            int limit;
+            int offset;
+            try {
+                limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : PAGE_SIZE;
+                offset = query.containsKey("offset") ? Integer.parseInt(query.get("offset")) : 0;
+            } catch (NumberFormatException e) {
+                sendJsonResponse(exchange, 400, "{\"code\":400,\"message\":\"分页参数无效\"}");
+                return;
+            }
+            if (offset < 0) {
+                sendJsonResponse(exchange, 400, "{\"code\":400,\"message\":\"分页参数无效\"}");
+                return;
+            }
+            final MessageSearchIndex.Result result = searchIndex.search(terms, offset,
+                    Math.max(1, Math.min(limit, PAGE_SIZE)));
+            // 索引只保存游标，命中的留言从存储中一次批量读取；存储不可用（数据库断开、冷段读取失败）时返回503
+            final List<Message> messages = new ArrayList<>(result.hits.size());
+            try {
+                for (Message message : repository.findAll(result.hits)) {
+                    if (message != null) {
+                        messages.add(message);
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                e.printStackTrace();
+                sendJsonResponse(exchange, 503, "{\"code\":503,\"message\":\"留言存储暂不可用\"}");
+                return;
+            }
+            final int next = offset + result.hits.size();
+            sendJsonStream(exchange, 200, writer -> {
+                writer.raw("{\"code\":200,\"message\":").string("获取成功").raw(",\"data\":");
+                writer.messages(messages).raw(",\"total\":").raw(Integer.toString(result.total));
+                writer.raw(",\"nextOffset\":").raw(next < result.total ? Integer.toString(next) : "null").raw("}");
+            });
         }
     }
     
-    // 加载留言列表
-    private static List<Message> loadMessages() {
-        // 如果内存中已有数据，直接返回
-        if (memoryMessages != null) {
-            return memoryMessages;
+    // 新留言推送处理器：GET /messages/stream 返回text/event-stream，每条新留言为一个message事件，
+    // id为留言id；断线重连时浏览器自动带上Last-Event-ID（也可用lastEventId查询参数），从断点之后继续推送
+    static class StreamHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, OPTIONS");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Last-Event-ID");
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendJsonResponse(exchange, 405, "{\"code\":405,\"message\":\"不支持的请求方法\"}");
+                return;
+            }
+            // 推送连接在整个订阅期间占用处理线程，single模式下会阻塞所有其他请求
+            if ("single".equalsIgnoreCase(EXECUTOR)) {
+                sendJsonResponse(exchange, 503, "{\"code\":503,\"message\":\"实时推送需要executor=pool或virtual\"}");
+                return;
+            }
+            String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+            if (lastEventId == null) {
+                lastEventId = parseQuery(exchange.getRequestURI().getRawQuery()).get("lastEventId");
+            }
+            MessageStream.Subscription subscription = messageStream.subscribe(lastEventId);
+            if (subscription == null) {
+                sendJsonResponse(exchange, 503, "{\"code\":503,\"message\":\"推送连接数已满\"}");
+                return;
+            }
+            if (!"virtual".equalsIgnoreCase(EXECUTOR)) {
+                serve(exchange, subscription);
+                return;
+            }
+            // 虚拟线程在JDK的套接字写入中会固定在载体线程上，客户端不读取时可能占住全部载体线程，
+            // 使所有请求停顿；virtual模式下改由平台线程写出，请求线程只等待其结束（等待时不占用载体线程）
+            final CountDownLatch done = new CountDownLatch(1);
+            Thread writer = new Thread(() -> {
+                try {
+                    serve(exchange, subscription);
+                } finally {
+                    done.countDown();
+                }
+            }, "message-stream");
+            writer.setDaemon(true);
+            writer.start();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
         
-        try {
-            // 尝试从文件加载
-            if (Files.exists(Paths.get(MESSAGES_FILE))) {
-                String content = new String(Files.readAllBytes(Paths.get(MESSAGES_FILE)), "UTF-8");
-                memoryMessages = jsonToMessages(content);
-                return memoryMessages;
+        // 持续写出订阅的事件，直到客户端断开或被判定为慢消费者
+        private static void serve(HttpExchange exchange, MessageStream.Subscription subscription) {
+            try {
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=UTF-8");
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                // 禁止反向代理缓冲事件
+                exchange.getResponseHeaders().set("X-Accel-Buffering", "no");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                // 断开后浏览器等待3秒重连
+                out.write("retry: 3000\n\n".getBytes("UTF-8"));
+                out.flush();
+                byte[] event;
+                // 每次等到一个事件后连同已排队的事件一起写出，只flush一次；被断开时结束响应
+                while ((event = subscription.next(STREAM_HEARTBEAT_MILLIS)) != null) {
+                    do {
+                        out.write(event);
+                    } while ((event = subscription.poll()) != null);
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // 客户端已断开
+            } finally {
+                messageStream.unsubscribe(subscription);
+                exchange.close();
             }
-        } catch (Exception e) {
-            // 文件读取失败，继续使用内存初始化
-            System.err.println("无法从文件加载留言，将使用内存初始化: " + e.getMessage());
         }
-        
-        // 初始化内存中的默认留言
-        memoryMessages = new ArrayList<>();
-        Message defaultMessage = new Message();
-        defaultMessage.setId("1");
-        defaultMessage.setName("系统");
-        defaultMessage.setEmail("system@resume.com");
-        defaultMessage.setContent("欢迎使用留言板");
-        defaultMessage.setCreateTime(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
-        memoryMessages.add(defaultMessage);
-        
-        return memoryMessages;
     }
     
-    // 保存留言列表
-    private static void saveMessages(List<Message> messages) throws IOException {
-        // 更新内存中的留言列表
-        memoryMessages = new ArrayList<>(messages);
-        
-        // 尝试保存到文件（本地环境使用）
+    // 获取当前版本的留言列表响应，版本未变化时直接复用已编码的字节数组
+    private static ResponseCache.Entry messagesResponse() throws IOException {
+        // 必须先读版本号再读数据：数据只会比版本号新，缓存项不会比其版本号旧
+        long version = repository.version();
+        ResponseCache.Entry entry = messagesResponseCache.get(version);
+        if (entry != null) {
+            return entry;
+        }
+        MessageRepository.Page page = repository.page(PAGE_SIZE, null, null);
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try (JsonStreamWriter writer = new JsonStreamWriter(response)) {
+            writePage(writer, page);
+        }
+        // 列表按时间倒序，第一条即最新留言
+        long lastModified = page.messages.isEmpty() ? -1 : page.messages.get(0).getCreateTimeMillis();
+        return messagesResponseCache.put(version, response.toByteArray(), lastModified);
+    }
+    
+    // 写出一页留言的响应，结果按新到旧排列；还有更旧的留言时nextCursor指向本页最后一条（用作before），
+    // 还有更新的留言时prevCursor指向本页第一条（用作after）
+    private static void writePage(JsonStreamWriter writer, MessageRepository.Page page) throws IOException {
+        List<Message> messages = page.messages;
+        writer.raw("{\"code\":200,\"message\":").string("获取成功").raw(",\"data\":");
+        writer.messages(messages).raw(",\"nextCursor\":");
+        writeCursor(writer, page.hasOlder && !messages.isEmpty() ? messages.get(messages.size() - 1) : null);
+        writer.raw(",\"prevCursor\":");
+        writeCursor(writer, page.hasNewer && !messages.isEmpty() ? messages.get(0) : null);
+        writer.raw("}");
+    }
+
+    private static void writeCursor(JsonStreamWriter writer, Message message) throws IOException {
+        if (message == null) {
+            writer.raw("null");
+        } else {
+            writer.string(MessageCursor.of(message).encode());
+        }
+    }
+    
+    // 解析URL查询参数
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            query.put(key, value);
+        }
+        return query;
+    }
+    
+    // 新留言的创建时间：取整到秒，与输出格式的精度一致，重放日志或从JSON重新加载后排序不变；同一秒内按id排序
+    static long currentSecondMillis() {
+        long now = System.currentTimeMillis();
+        return now - Math.floorMod(now, 1000L);
+    }
+    
+    // 请求头中声明的Content-Length，未声明或无效时返回-1
+    private static long contentLength(HttpExchange exchange) {
+        String value = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (value == null) {
+            return -1;
+        }
         try {
-            String json = messagesToJson(messages);
-            Files.write(Paths.get(MESSAGES_FILE), json.getBytes("UTF-8"), 
-                       StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        } catch (Exception e) {
-            // 文件写入失败，但不影响内存存储
-            System.err.println("无法保存留言到文件，但数据已保存在内存中: " + e.getMessage());
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
     
-    // 将留言列表转换为JSON字符串
-    private static String messagesToJson(List<Message> messages) {
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < messages.size(); i++) {
-            if (i > 0) {
-                json.append(",");
+    // 从offset开始读取请求体直到结束或读满limit字节，返回缓冲区中的总字节数
+    private static int readBody(InputStream in, byte[] buffer, int offset, int limit) throws IOException {
+        int length = offset;
+        while (length < limit) {
+            int read = in.read(buffer, length, limit - length);
+            if (read < 0) {
+                break;
             }
-            json.append(messageToJson(messages.get(i)));
+            length += read;
         }
-        json.append("]");
-        return json.toString();
+        return length;
     }
     
-    // 将单个留言转换为JSON字符串
-    private static String messageToJson(Message message) {
-        return "{" +
-               "\"id\":\"" + escapeJson(message.getId()) + "\"," +
-               "\"name\":\"" + escapeJson(message.getName()) + "\"," +
-               "\"email\":\"" + escapeJson(message.getEmail()) + "\"," +
-               "\"content\":\"" + escapeJson(message.getContent()) + "\"," +
-               "\"createTime\":\"" + escapeJson(message.getCreateTime()) + "\"" +
-               "}";
+    // 发送JSON响应，超过压缩阈值时按Accept-Encoding压缩
+    private static void sendJsonResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
+        sendJsonBytes(exchange, statusCode, response.getBytes("UTF-8"));
+    }
+    
+    private static void sendJsonBytes(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        String encoding = Compression.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"), body.length);
+        if (encoding != null) {
+            body = Compression.compress(body, encoding);
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
     }
     
-    // 将JSON字符串转换为留言列表
-    private static List<Message> jsonToMessages(String json) {
-        List<Message> messages = new ArrayList<>();
+    // 流式JSON响应体
+    interface JsonBody {
+        void writeTo(JsonStreamWriter writer) throws IOException;
+    }
+    
+    // 流式发送JSON：内容不超过一个缓冲区时按固定长度发送（可压缩），否则改用chunked边编码边发送；
+    // HTTP/1.0客户端不支持chunked，两种传输层都改为不分块写出、以关闭连接结束响应体
+    private static void sendJsonStream(HttpExchange exchange, int statusCode, JsonBody body) throws IOException {
+        ChunkedResponseStream chunked = new ChunkedResponseStream(exchange, statusCode);
+        JsonStreamWriter writer = new JsonStreamWriter(chunked);
+        try {
+            body.writeTo(writer);
+        } catch (IOException | RuntimeException e) {
+            writer.discard();
+            throw e;
+        }
+        if (!writer.drained()) {
+            byte[] bytes = writer.bufferedBytes();
+            writer.discard();
+            sendJsonBytes(exchange, statusCode, bytes);
+            return;
+        }
+        try {
+            writer.close();
+        } finally {
+            chunked.close();
+        }
+    }
+    
+    // 首次写入时才发送长度未知（chunked或HTTP/1.0下以关闭连接结束）的响应头，并按协商结果包装压缩流
+    static class ChunkedResponseStream extends OutputStream {
+        private final HttpExchange exchange;
+        private final int statusCode;
+        private OutputStream target;
+        
+        ChunkedResponseStream(HttpExchange exchange, int statusCode) {
+            this.exchange = exchange;
+            this.statusCode = statusCode;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            start().write(b);
+        }
         
-        // 简单解析JSON数组
-        Pattern pattern = Pattern.compile("\\{([^}]*)\\}");
-        Matcher matcher = pattern.matcher(json);
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            start().write(b, off, len);
+        }
         
-        while (matcher.find()) {
-            String messageJson = "{" + matcher.group(1) + "}";
-            Message message = jsonToMessage(messageJson);
-            if (message != null) {
-                messages.add(message);
+        @Override
+        public void close() throws IOException {
+            if (target != null) {
+                target.close();
             }
         }
         
-        return messages;
+        private OutputStream start() throws IOException {
+            if (target == null) {
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+                exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+                // 长度未知，超过一个缓冲区的内容必然达到压缩阈值
+                String encoding = Compression.negotiate(
+                        exchange.getRequestHeaders().getFirst("Accept-Encoding"), Integer.MAX_VALUE);
+                if (encoding != null) {
+                    exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                }
+                exchange.sendResponseHeaders(statusCode, 0);
+                target = exchange.getResponseBody();
+                if (encoding != null) {
+                    target = Compression.wrap(target, encoding);
+                }
+            }
+            return target;
+        }
     }
     
-    // 将JSON字符串转换为单个留言
-    private static Message jsonToMessage(String json) {
-        try {
-            Message message = new Message();
-            
-            // 简单解析JSON对象
-            Pattern idPattern = Pattern.compile("\"id\":\"([^\"]*)\"");
-            Pattern namePattern = Pattern.compile("\"name\":\"([^\"]*)\"");
-            Pattern emailPattern = Pattern.compile("\"email\":\"([^\"]*)\"");
-            Pattern contentPattern = Pattern.compile("\"content\":\"([^\"]*)\"");
-            Pattern createTimePattern = Pattern.compile("\"createTime\":\"([^\"]*)\"");
-            
-            Matcher idMatcher = idPattern.matcher(json);
-            if (idMatcher.find()) {
-                message.setId(idMatcher.group(1));
-            }
-            
-            Matcher nameMatcher = namePattern.matcher(json);
-            if (nameMatcher.find()) {
-                message.setName(nameMatcher.group(1));
+    // 读取单个留言对象，未知字段跳过；旧数据中的数字id按字面量保存为字符串
+    static Message readMessage(JsonReader reader) {
+        Message message = new Message();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "id": message.setId(reader.nextValueAsString()); break;
+                case "name": message.setName(reader.nextValueAsString()); break;
+                case "email": message.setEmail(reader.nextValueAsString()); break;
+                case "content": message.setContent(reader.nextValueAsString()); break;
+                case "createTime": message.setCreateTime(reader.nextValueAsString()); break;
+                default: reader.skipValue();
             }
-            
-            Matcher emailMatcher = emailPattern.matcher(json);
-            if (emailMatcher.find()) {
-                message.setEmail(emailMatcher.group(1));
-            }
-            
-            Matcher contentMatcher = contentPattern.matcher(json);
-            if (contentMatcher.find()) {
-                message.setContent(contentMatcher.group(1));
-            }
-            
-            Matcher createTimeMatcher = createTimePattern.matcher(json);
-            if (createTimeMatcher.find()) {
-                message.setCreateTime(createTimeMatcher.group(1));
-            }
-            
-            return message;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
         }
+        reader.endObject();
+        return message;
     }
     
-    // 将JSON字符串转换为Map
-    private static Map<String, String> parseJsonToMap(String json) {
+    // 将JSON对象（UTF-8字节）解析为Map，只保留标量字段
+    static Map<String, String> parseJsonToMap(byte[] json, int offset, int length) {
         Map<String, String> map = new HashMap<>();
-        
-        // 简单解析JSON对象
-        Pattern pattern = Pattern.compile("\"([^\"]*)\":\"([^\"]*)\"");
-        Matcher matcher = pattern.matcher(json);
-        
-        while (matcher.find()) {
-            map.put(matcher.group(1), matcher.group(2));
+        JsonReader reader = new JsonReader(json, offset, length);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peekStructure()) {
+                // 嵌套对象或数组不是留言字段，跳过
+                reader.skipValue();
+            } else {
+                map.put(name, reader.nextValueAsString());
+            }
+        }
+        reader.endObject();
+        if (!reader.isEnd()) {
+            throw new IllegalArgumentException("JSON格式错误: 对象之后还有多余内容");
         }
-        
         return map;
     }
     
-    // 转义JSON字符串中的特殊字符
-    private static String escapeJson(String str) {
-        if (str == null) {
-            return "";
-        }
-        return str.replace("\\", "\\\\")
-                  .replace("\"", "\\\"")
-                  .replace("\n", "\\n")
-                  .replace("\r", "\\r")
-                  .replace("\t", "\\t");
-    }
-    
     // 留言实体类
     static class Message {
         private String id;
         private String name;
         private String email;
         private String content;
-        private String createTime;
+        // 创建时间（毫秒），用于排序与分页，输出时才格式化；无法解析时为-1
+        private long createTimeMillis = -1;
+        // 仅在旧数据中的createTime无法解析时保存原文，原样输出
+        private String unparsedCreateTime;
+        // 已编码的JSON对象（创建或加入存储时编码，或冷段文件中的记录），输出时直接复制；任何字段被修改后失效。
+        // volatile：读到非null时缓冲区内容已完整可见
+        private volatile ByteBuffer encoded;
         
         public String getId() { return id; }
-        public void setId(String id) { this.id = id; }
+        public void setId(String id) { this.id = id; this.encoded = null; }
         
         public String getName() { return name; }
-        public void setName(String name) { this.name = name; }
+        public void setName(String name) { this.name = name; this.encoded = null; }
         
         public String getEmail() { return email; }
-        public void setEmail(String email) { this.email = email; }
+        public void setEmail(String email) { this.email = email; this.encoded = null; }
         
         public String getContent() { return content; }
-        public void setContent(String content) { this.content = content; }
+        public void setContent(String content) { this.content = content; this.encoded = null; }
         
-        public String getCreateTime() { return createTime; }
-        public void setCreateTime(String createTime) { this.createTime = createTime; }
+        public String getCreateTime() {
+            return createTimeMillis >= 0 ? CreateTimeFormat.format(createTimeMillis) : unparsedCreateTime;
+        }
+        public void setCreateTime(String createTime) {
+            this.createTimeMillis = CreateTimeFormat.parse(createTime);
+            this.unparsedCreateTime = createTimeMillis >= 0 ? null : createTime;
+            this.encoded = null;
+        }
+        
+        // 来源已提供毫秒值（新留言、数据库中的DATETIME、二进制快照）时直接使用，不经过字符串
+        void setCreateTimeMillis(long createTimeMillis) {
+            this.createTimeMillis = createTimeMillis;
+            this.unparsedCreateTime = null;
+            this.encoded = null;
+        }
+        
+        public long getCreateTimeMillis() { return createTimeMillis; }
+        
+        // 只读视图，未编码时为null
+        ByteBuffer getEncoded() {
+            ByteBuffer current = encoded;
+            return current == null ? null : current.duplicate();
+        }
+        void setEncoded(ByteBuffer encoded) { this.encoded = encoded.asReadOnlyBuffer(); }
+        
+        // 编码一次JSON对象并保存，之后每次输出都直接复制字节；留言共享给其他线程后不再修改，
+        // 由创建者在共享前调用（新增请求、存储加载），读者看到的留言都已编码
+        void preEncode() {
+            if (encoded == null) {
+                setEncoded(ByteBuffer.wrap(JsonStreamWriter.encode(this)));
+            }
+        }
     }
 }
\ No newline at end of file
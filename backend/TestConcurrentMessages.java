@@ -0,0 +1,381 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 并发压力测试：
+ * 1. 多个线程并发新增留言、同时多个线程无锁分页读取，读者看到的每一页都有序且不重复，
+ *    结束后留言一条不少，重新打开存储后仍然一条不少（单写者 + 不可变快照没有丢失更新）；
+ * 2. 有界线程池占满时，nio传输层立即对新请求返回503，事件循环不被处理器阻塞，释放后恢复正常；
+ * 3. 日志写入线程关闭的同时不断提交：每个提交都会完成（成功或IOException），成功的条数与发布的条数相同；
+ *    日志写入失败（/dev/full）的留言以IOException完成且不发布，日志未打开时仍发布到内存；
+ * 4. 仅内存存储并发新增后只保留最新的messages.hotWindow条。
+ * 用法：java -cp <classes> com.resume.message.TestConcurrentMessages [写线程数] [每线程条数]
+ */
+public class TestConcurrentMessages {
+    private static final int PORT = 19081;
+
+    public static void main(String[] args) throws Exception {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perWriter = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        testParallelAdds(writers, perWriter);
+        testBackpressure();
+        testSubmitDuringClose();
+        testFailedLogWrite();
+        testMemoryHotWindow();
+        System.out.println("全部通过");
+        System.exit(0);
+    }
+
+    private static void testParallelAdds(int writers, int perWriter) throws Exception {
+        Path dir = Files.createTempDirectory("messages-stress");
+        // 小热区与小冷段，压力期间反复触发快照与封存
+        System.setProperty("message.messages.hotWindow", "50");
+        System.setProperty("message.messages.segmentSize", "100");
+        System.setProperty("message.log.snapshotBytes", "16384");
+        FileMessageRepository repository = open(dir);
+        MessageIdGenerator ids = new MessageIdGenerator(0);
+
+        ExecutorService threads = Executors.newFixedThreadPool(writers + 4);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> readerFailure = new AtomicReference<>();
+        List<Future<?>> writes = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            writes.add(threads.submit(() -> {
+                start.await();
+                for (int i = 0; i < perWriter; i++) {
+                    Message message = new Message();
+                    message.setId(Long.toString(ids.next()));
+                    message.setName("写者" + writer);
+                    message.setEmail("w" + writer + "@example.com");
+                    message.setContent("第" + i + "条");
+                    message.setCreateTimeMillis(SimpleMessageApplication.currentSecondMillis());
+                    message.preEncode();
+                    repository.add(message);
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> reads = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            reads.add(threads.submit(() -> {
+                start.await();
+                int lastSeen = 0;
+                while (writing.get()) {
+                    List<Message> walked = walk(repository, 37, 5);
+                    String problem = checkOrder(walked);
+                    if (problem != null) {
+                        readerFailure.compareAndSet(null, problem);
+                    }
+                    int total = walk(repository, 1000, Integer.MAX_VALUE).size();
+                    if (total < lastSeen) {
+                        readerFailure.compareAndSet(null, "留言总数从" + lastSeen + "减少到" + total);
+                    }
+                    lastSeen = total;
+                }
+                return null;
+            }));
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        writing.set(false);
+        for (Future<?> read : reads) {
+            read.get();
+        }
+        threads.shutdown();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        check(readerFailure.get() == null, "读者看到不一致的数据: " + readerFailure.get());
+
+        int expected = writers * perWriter + 1;
+        List<Message> all = walk(repository, 1000, Integer.MAX_VALUE);
+        check(checkOrder(all) == null, checkOrder(all));
+        check(all.size() == expected, "写入" + expected + "条，读到" + all.size() + "条");
+        repository.close();
+
+        FileMessageRepository reopened = open(dir);
+        int afterRestart = walk(reopened, 1000, Integer.MAX_VALUE).size();
+        reopened.close();
+        check(afterRestart == expected, "重新打开后读到" + afterRestart + "条，应为" + expected);
+        System.out.println("并发新增 " + writers + "x" + perWriter + " 条（同时4个读者），耗时" + millis + "ms: 通过");
+    }
+
+    // 有界线程池(2线程+2队列)占满后，其余请求应立即得到503，且不阻塞事件循环
+    private static void testBackpressure() throws Exception {
+        ThreadPoolExecutor pool = SimpleMessageApplication.newBoundedPool("stress-worker", 2, 2);
+        HttpTransport transport = SimpleMessageApplication.createTransport("nio", new InetSocketAddress(PORT), pool);
+        CountDownLatch release = new CountDownLatch(1);
+        transport.createContext("/slow", exchange -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        transport.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        transport.start();
+        ExecutorService clients = Executors.newCachedThreadPool();
+        try {
+            List<Future<Integer>> slow = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                slow.add(clients.submit(() -> status("/slow")));
+            }
+            // 等待线程池与队列被占满
+            long deadline = System.currentTimeMillis() + 5000;
+            while (pool.getActiveCount() + pool.getQueue().size() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            long started = System.nanoTime();
+            int saturated = status("/");
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            check(saturated == 503, "线程池占满时应返回503，实际为" + saturated);
+            check(millis < 1000, "线程池占满时请求等待了" + millis + "ms，事件循环被阻塞");
+
+            // 等其余4个慢请求都已被拒绝再释放，否则释放后才到达的请求会正常完成
+            while (doneCount(slow) < 4 && System.currentTimeMillis() < deadline + 5000) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            int ok = 0;
+            int rejected = 0;
+            for (Future<Integer> result : slow) {
+                int code = result.get(10, TimeUnit.SECONDS);
+                if (code == 200) {
+                    ok++;
+                } else if (code == 503) {
+                    rejected++;
+                }
+            }
+            check(ok == 4 && rejected == 4, "8个慢请求应有4个完成、4个被拒绝，实际为" + ok + "/" + rejected);
+            check(status("/") == 200, "释放后应恢复正常");
+            System.out.println("线程池占满时返回503（" + millis + "ms），释放后恢复: 通过");
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+            transport.stop();
+            pool.shutdownNow();
+        }
+    }
+
+    // 关闭与提交并发：submit检查状态与入队之间被close()取走队列时，请求会永远等待
+    private static void testSubmitDuringClose() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        int rounds = 50;
+        for (int round = 0; round < rounds; round++) {
+            Path file = Files.createTempFile("messages-close", ".log");
+            MessageLog log = new MessageLog(file);
+            log.open();
+            MessageStore store = new MessageStore(16);
+            store.load(Collections.<Message>emptyList(), Collections.<MessageSegments.Segment>emptyList());
+            GroupCommitWriter writer = new GroupCommitWriter(log, store, null, 256, 1, () -> { }, 0, null);
+            writer.start();
+            List<Future<List<CompletableFuture<Boolean>>>> submitters = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                submitters.add(threads.submit(() -> {
+                    List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+                    while (true) {
+                        CompletableFuture<Boolean> future = writer.submit(message(futures.size()));
+                        futures.add(future);
+                        if (future.isCompletedExceptionally()) {
+                            return futures;
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(5);
+            writer.close();
+            int durable = 0;
+            for (Future<List<CompletableFuture<Boolean>>> submitter : submitters) {
+                for (CompletableFuture<Boolean> future : submitter.get(10, TimeUnit.SECONDS)) {
+                    try {
+                        check(future.get(10, TimeUnit.SECONDS), "日志已打开时提交不应只保存在内存中");
+                        durable++;
+                    } catch (ExecutionException e) {
+                        check(e.getCause() instanceof IOException, "提交失败应为IOException: " + e.getCause());
+                    }
+                }
+            }
+            check(store.snapshot().size() == durable, "成功" + durable + "条，发布了" + store.snapshot().size() + "条");
+            log.close();
+            Files.delete(file);
+        }
+        threads.shutdown();
+        System.out.println("关闭时并发提交" + rounds + "轮，每个提交都已完成: 通过");
+    }
+
+    private static void testFailedLogWrite() throws Exception {
+        Path full = Paths.get("/dev/full");
+        if (Files.exists(full)) {
+            MessageLog log = new MessageLog(full);
+            log.open();
+            MessageStore store = new MessageStore(16);
+            store.load(Collections.<Message>emptyList(), Collections.<MessageSegments.Segment>emptyList());
+            GroupCommitWriter writer = new GroupCommitWriter(log, store, null, 256, 1, () -> { }, 0, null);
+            writer.start();
+            try {
+                writer.submit(message(0)).get(10, TimeUnit.SECONDS);
+                throw new AssertionError("写入/dev/full应失败");
+            } catch (ExecutionException e) {
+                check(e.getCause() instanceof IOException, "写入失败应为IOException: " + e.getCause());
+            }
+            check(store.snapshot().size() == 0, "写入日志失败的留言不应发布");
+            writer.close();
+            log.close();
+            System.out.println("日志写入失败时不发布留言: 通过");
+        }
+
+        // 日志启动时未能打开（未调用open）：仅使用内存，留言发布后以false完成
+        MessageStore store = new MessageStore(16);
+        store.load(Collections.<Message>emptyList(), Collections.<MessageSegments.Segment>emptyList());
+        GroupCommitWriter writer = new GroupCommitWriter(new MessageLog(Paths.get("unused.log")), store, null,
+                256, 1, () -> { }, 0, null);
+        writer.start();
+        check(!writer.submit(message(0)).get(10, TimeUnit.SECONDS), "日志未打开时应返回false");
+        check(store.snapshot().size() == 1, "日志未打开时留言应发布到内存");
+        writer.close();
+        System.out.println("日志不可用时仅保存在内存中: 通过");
+    }
+
+    // 4个线程并发新增，时间戳相同的留言按id区分；最终保留的应恰好是按游标顺序最新的hotWindow条
+    private static void testMemoryHotWindow() throws Exception {
+        int hotWindow = 50;
+        System.setProperty("message.messages.hotWindow", Integer.toString(hotWindow));
+        MemoryMessageRepository repository = new MemoryMessageRepository();
+        repository.open();
+        List<Message> added = Collections.synchronizedList(new ArrayList<Message>());
+        added.add(repository.page(1, null, null).messages.get(0));
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            final int writer = w;
+            writes.add(threads.submit(() -> {
+                for (int i = 0; i < 100; i++) {
+                    Message message = message(writer * 1000 + i);
+                    message.setCreateTimeMillis(1765785262000L + i * 1000L);
+                    repository.add(message);
+                    added.add(message);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        threads.shutdown();
+
+        List<Message> expected = new ArrayList<>(added);
+        expected.sort(MessageCursor.NEWEST_FIRST);
+        expected = expected.subList(0, hotWindow);
+        List<Message> kept = walk(repository, 1000, Integer.MAX_VALUE);
+        check(kept.size() == hotWindow, "应保留" + hotWindow + "条，实际" + kept.size() + "条");
+        for (int i = 0; i < hotWindow; i++) {
+            check(kept.get(i).getId().equals(expected.get(i).getId()),
+                    "第" + i + "条应为" + expected.get(i).getId() + "，实际为" + kept.get(i).getId());
+        }
+        System.out.println("仅内存存储只保留最新" + hotWindow + "条: 通过");
+    }
+
+    private static Message message(int i) {
+        Message message = new Message();
+        message.setId(Long.toString(1000000L + i));
+        message.setName("提交者");
+        message.setEmail("submit@example.com");
+        message.setContent("第" + i + "条");
+        message.setCreateTimeMillis(SimpleMessageApplication.currentSecondMillis());
+        return message;
+    }
+
+    private static int doneCount(List<Future<Integer>> futures) {
+        int done = 0;
+        for (Future<Integer> future : futures) {
+            if (future.isDone()) {
+                done++;
+            }
+        }
+        return done;
+    }
+
+    private static FileMessageRepository open(Path dir) {
+        FileMessageRepository repository = new FileMessageRepository(dir.resolve("messages.json"),
+                dir.resolve("messages.bin"), dir.resolve("messages.log"), dir.resolve("messages.segments"));
+        repository.open();
+        return repository;
+    }
+
+    // 从第一页开始向旧翻页，最多pages页
+    private static List<Message> walk(MessageRepository repository, int limit, int pages) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        MessageRepository.Page page = repository.page(limit, null, null);
+        for (int i = 0; i < pages; i++) {
+            messages.addAll(page.messages);
+            if (!page.hasOlder) {
+                break;
+            }
+            page = repository.page(limit, MessageCursor.of(page.messages.get(page.messages.size() - 1)), null);
+        }
+        return messages;
+    }
+
+    // 新到旧严格有序、id不重复时返回null
+    private static String checkOrder(List<Message> messages) {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < messages.size(); i++) {
+            if (!ids.add(messages.get(i).getId())) {
+                return "重复的留言 " + messages.get(i).getId();
+            }
+            if (i > 0 && MessageCursor.NEWEST_FIRST.compare(messages.get(i - 1), messages.get(i)) >= 0) {
+                return "第" + i + "条顺序错误";
+            }
+        }
+        return null;
+    }
+
+    private static int status(String path) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + path).openConnection();
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(15000);
+            return connection.getResponseCode();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 测试数据库存储：
+ * 1. 键集分页：大量留言的createTime相同（含DATETIME的.003/.007毫秒）时，向旧、向新翻页都不重复、不遗漏；
+ * 2. 批量查找：一次查询取回的留言与逐条查找一致，不存在的游标对应null，超过单批上限时分批查询；
+ * 3. 写后缓冲：超出列长度的留言移入死信文件，其后的留言照常写入数据库，重启后不再重写已移入死信的留言。
+ * 用法：java -cp <驱动jar>:<classes> com.resume.message.TestJdbcMessageRepository [jdbcUrl] [user] [password]
+ * 不传参数时使用H2内存库的SQL Server兼容模式；会新建并删除表dbo.message_paging_test与dbo.message_write_behind_test
+ */
+public class TestJdbcMessageRepository {
+    private static final String TABLE = "dbo.message_paging_test";
+    private static final String WRITE_BEHIND_TABLE = "dbo.message_write_behind_test";
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0]
+                : "jdbc:h2:mem:paging;MODE=MSSQLServer;DB_CLOSE_DELAY=-1;INIT=CREATE SCHEMA IF NOT EXISTS dbo";
+        String user = args.length > 1 ? args[1] : null;
+        String password = args.length > 2 ? args[2] : null;
+
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + TABLE + " (id INT IDENTITY(1,1) PRIMARY KEY, messageId BIGINT NULL, "
+                    + "name NVARCHAR(100) NOT NULL, email NVARCHAR(200) NOT NULL, "
+                    + "content NVARCHAR(MAX) NOT NULL, createTime DATETIME NOT NULL)");
+        }
+
+        JdbcMessageRepository repository = new JdbcMessageRepository(
+                new JdbcConnectionPool(url, user, password, 2, 5000), TABLE);
+        boolean passed = false;
+        try {
+            repository.open();
+            // 每个时间点写入5条，时间点之间相差3或4毫秒，正好落在DATETIME的取值上；
+            // 一半留言带有应用分配的id，另一半模拟没有messageId的旧记录
+            long base = 1700000000000L;
+            long[] offsets = {0, 3, 7, 10, 1000, 1003};
+            int total = 0;
+            for (long offset : offsets) {
+                for (int i = 0; i < 5; i++) {
+                    Message message = new Message();
+                    if (total % 2 == 0) {
+                        message.setId(String.valueOf(1000000L + total));
+                    }
+                    message.setName("测试" + total);
+                    message.setEmail("test@example.com");
+                    message.setContent("第" + total + "条");
+                    message.setCreateTimeMillis(base + offset);
+                    repository.add(message);
+                    total++;
+                }
+            }
+
+            for (int limit = 1; limit <= 7; limit++) {
+                List<String> older = walkOlder(repository, limit);
+                List<String> newer = walkNewer(repository, limit, older);
+                check(older.size() == total, "向旧翻页(每页" + limit + "条)得到" + older.size() + "条，应为" + total);
+                check(new HashSet<>(older).size() == total, "向旧翻页(每页" + limit + "条)有重复");
+                check(newer.equals(older), "向新翻页(每页" + limit + "条)的顺序与向旧翻页不一致: " + newer);
+                System.out.println("每页" + limit + "条: 通过");
+            }
+            testFindAll(repository, total);
+            passed = true;
+        } finally {
+            repository.close();
+            try (Connection connection = DriverManager.getConnection(url, user, password);
+                 Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE " + TABLE);
+            }
+        }
+        testWriteBehindDeadLetter(url, user, password);
+        System.out.println(passed ? "全部通过" : "失败");
+    }
+
+    // 与SQLQuery1.sql相同的列长度；第一条留言的content超过500个字符，数据库永远不会接受
+    private static void testWriteBehindDeadLetter(String url, String user, String password) throws Exception {
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + WRITE_BEHIND_TABLE + " (id INT IDENTITY(1,1) PRIMARY KEY, "
+                    + "messageId BIGINT NULL, name NVARCHAR(50) NOT NULL, email NVARCHAR(100) NOT NULL, "
+                    + "content NVARCHAR(500) NOT NULL, createTime DATETIME NOT NULL)");
+        }
+        System.setProperty("message.writeBehind.flushIntervalMs", "20");
+        Path dir = Files.createTempDirectory("write-behind");
+        Path outbox = dir.resolve("messages.outbox.log");
+        Path deadLetters = dir.resolve("messages.deadletter.jsonl");
+        try {
+            WriteBehindMessageRepository repository = openWriteBehind(url, user, password, outbox, deadLetters);
+            char[] tooLong = new char[600];
+            Arrays.fill(tooLong, '长');
+            long base = 1700000000000L;
+            repository.add(writeBehindMessage(2000001L, new String(tooLong), base));
+            repository.add(writeBehindMessage(2000002L, "正常留言一", base + 1000));
+            repository.add(writeBehindMessage(2000003L, "正常留言二", base + 2000));
+
+            // 欢迎留言与两条正常留言
+            long deadline = System.currentTimeMillis() + 5000;
+            while (rowCount(url, user, password) < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            check(rowCount(url, user, password) == 3, "超长留言之后的留言应写入数据库，实际有"
+                    + rowCount(url, user, password) + "行");
+            List<String> lines = Files.readAllLines(deadLetters, StandardCharsets.UTF_8);
+            check(lines.size() == 1 && lines.get(0).contains("\"id\":\"2000001\""), "死信文件应只有超长的留言: " + lines);
+            check(Metrics.toJson().contains("\"writeBehind.deadLettered\":1"), "死信计数应为1: " + Metrics.toJson());
+            repository.close();
+
+            // 发件日志未清空，重启后重放：超长留言已在死信文件中，不再重写
+            repository = openWriteBehind(url, user, password, outbox, deadLetters);
+            Thread.sleep(200);
+            repository.close();
+            check(Files.readAllLines(deadLetters, StandardCharsets.UTF_8).size() == 1, "重启后重复写入了死信");
+            check(rowCount(url, user, password) == 3, "重启后数据库行数变化");
+            System.out.println("写后缓冲隔离无法写入的留言: 通过");
+        } finally {
+            try (Connection connection = DriverManager.getConnection(url, user, password);
+                 Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE " + WRITE_BEHIND_TABLE);
+            }
+            Files.deleteIfExists(outbox);
+            Files.deleteIfExists(deadLetters);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // 游标顺序打乱、同一时间点的留言交叉出现，并混入不存在的游标；重复到300个以覆盖分批
+    private static void testFindAll(JdbcMessageRepository repository, int total) throws Exception {
+        List<Message> all = repository.page(total, null, null).messages;
+        List<MessageCursor> cursors = new ArrayList<>();
+        for (int i = 0; cursors.size() < 300; i += 7) {
+            cursors.add(MessageCursor.of(all.get(i % all.size())));
+            if (cursors.size() % 50 == 0) {
+                // 时间存在、id不存在
+                cursors.add(new MessageCursor(all.get(0).getCreateTimeMillis(), "999999999"));
+            }
+        }
+        for (int size : new int[]{1, 3, 300}) {
+            List<MessageCursor> batch = cursors.subList(0, size);
+            List<Message> found = repository.findAll(batch);
+            check(found.size() == size, "批量查找" + size + "个游标返回" + found.size() + "条");
+            for (int i = 0; i < size; i++) {
+                Message expected = repository.find(batch.get(i));
+                Message actual = found.get(i);
+                check(expected == null ? actual == null
+                                : actual != null && expected.getId().equals(actual.getId())
+                                && expected.getContent().equals(actual.getContent()),
+                        "批量查找第" + i + "个游标的结果与逐条查找不一致");
+            }
+        }
+        System.out.println("批量查找: 通过");
+    }
+
+    private static WriteBehindMessageRepository openWriteBehind(String url, String user, String password,
+                                                                Path outbox, Path deadLetters) throws Exception {
+        WriteBehindMessageRepository repository = new WriteBehindMessageRepository(new JdbcMessageRepository(
+                new JdbcConnectionPool(url, user, password, 2, 5000), WRITE_BEHIND_TABLE), outbox, deadLetters);
+        repository.open();
+        return repository;
+    }
+
+    private static Message writeBehindMessage(long id, String content, long createTime) {
+        Message message = new Message();
+        message.setId(String.valueOf(id));
+        message.setName("写后缓冲");
+        message.setEmail("test@example.com");
+        message.setContent(content);
+        message.setCreateTimeMillis(createTime);
+        return message;
+    }
+
+    private static int rowCount(String url, String user, String password) throws Exception {
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM " + WRITE_BEHIND_TABLE)) {
+            rows.next();
+            return rows.getInt(1);
+        }
+    }
+
+    // 从第一页开始一直向旧翻页，返回新到旧的全部id
+    private static List<String> walkOlder(JdbcMessageRepository repository, int limit) throws Exception {
+        List<String> ids = new ArrayList<>();
+        MessageRepository.Page page = repository.page(limit, null, null);
+        while (true) {
+            for (Message message : page.messages) {
+                ids.add(message.getId());
+            }
+            if (!page.hasOlder) {
+                return ids;
+            }
+            Message last = page.messages.get(page.messages.size() - 1);
+            page = repository.page(limit, MessageCursor.of(last), null);
+        }
+    }
+
+    // 从最旧的一条开始向新翻页，返回新到旧的全部id（含起点）
+    private static List<String> walkNewer(JdbcMessageRepository repository, int limit, List<String> newestFirst)
+            throws Exception {
+        List<Message> all = repository.page(newestFirst.size(), null, null).messages;
+        Message oldest = all.get(all.size() - 1);
+        check(oldest.getId().equals(newestFirst.get(newestFirst.size() - 1)), "最旧一条不一致");
+
+        List<String> oldestFirst = new ArrayList<>();
+        oldestFirst.add(oldest.getId());
+        Set<String> seen = new HashSet<>(oldestFirst);
+        MessageCursor cursor = MessageCursor.of(oldest);
+        while (true) {
+            MessageRepository.Page page = repository.page(limit, null, cursor);
+            check(!page.messages.isEmpty() && page.hasOlder, "向新翻页(每页" + limit + "条)提前结束");
+            // 页内为新到旧，倒序追加
+            for (int i = page.messages.size() - 1; i >= 0; i--) {
+                String id = page.messages.get(i).getId();
+                check(seen.add(id), "向新翻页(每页" + limit + "条)重复返回" + id);
+                oldestFirst.add(id);
+            }
+            if (!page.hasNewer) {
+                break;
+            }
+            cursor = MessageCursor.of(page.messages.get(0));
+        }
+        List<String> ids = new ArrayList<>();
+        for (int i = oldestFirst.size() - 1; i >= 0; i--) {
+            ids.add(oldestFirst.get(i));
+        }
+        return ids;
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
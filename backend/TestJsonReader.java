@@ -0,0 +1,79 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 测试JsonReader的语法检查：对象与数组的元素之间必须有逗号，结束符前与第一个元素前不能有逗号，
+ * POST请求体解析(parseJsonToMap)时对象之后不能有多余内容；格式正确的请求体、快照照常解析。
+ * 用法：java -cp <classes> com.resume.message.TestJsonReader
+ */
+public class TestJsonReader {
+    public static void main(String[] args) {
+        // 格式正确：空白、BOM、嵌套值与各种标量
+        Map<String, String> body = parse("{\"name\":\"访客\",\"email\":\"a@b.c\",\"content\":\"你好\"}");
+        check("访客".equals(body.get("name")) && "a@b.c".equals(body.get("email")) && "你好".equals(body.get("content")),
+                "请求体解析结果不正确: " + body);
+        body = parse(" \r\n{ \"name\" : \"a\" ,\t\"tags\" : [1, {\"x\": [2, 3]}], \"n\": -1.5e3, \"b\": true, "
+                + "\"z\": null } \n");
+        check("a".equals(body.get("name")) && "-1.5e3".equals(body.get("n")) && "true".equals(body.get("b"))
+                && body.containsKey("z") && !body.containsKey("tags"), "带空白与嵌套值的请求体解析结果不正确: " + body);
+        check(parse("\uFEFF{\"name\":\"a\"}").get("name").equals("a"), "带BOM的请求体解析结果不正确");
+        check(parse("{}").isEmpty(), "空对象应解析为空Map");
+        List<Message> messages = FileMessageRepository.jsonToMessages(
+                "[{\"id\":\"1\",\"name\":\"a\"} , {\"id\":\"2\",\"name\":\"b\",\"extra\":[]}]".getBytes(StandardCharsets.UTF_8));
+        check(messages.size() == 2 && "2".equals(messages.get(1).getId()), "快照数组解析结果不正确");
+        check(FileMessageRepository.jsonToMessages("[]".getBytes(StandardCharsets.UTF_8)).isEmpty(), "空数组应解析为空列表");
+
+        // 格式错误：请求体
+        rejected("{\"name\":\"a\" \"email\":\"b\"}", "对象成员之间缺少逗号");
+        rejected("{\"name\":\"a\",}", "对象结束符前多出逗号");
+        rejected("{,\"name\":\"a\"}", "第一个成员前多出逗号");
+        rejected("{\"name\":\"a\",,\"email\":\"b\"}", "连续两个逗号");
+        rejected("{\"name\":\"a\"}garbage", "对象之后的多余内容");
+        rejected("{\"name\":\"a\"}{\"name\":\"b\"}", "对象之后的第二个对象");
+        rejected("{\"name\":\"a\"", "对象未结束");
+        rejected("{\"tags\":[1,2] \"name\":\"a\"}", "跳过的嵌套值之后缺少逗号");
+
+        // 格式错误：快照数组
+        rejectedArray("[{\"id\":\"1\"} {\"id\":\"2\"}]", "数组元素之间缺少逗号");
+        rejectedArray("[{\"id\":\"1\"},]", "数组结束符前多出逗号");
+        rejectedArray("[,{\"id\":\"1\"}]", "第一个元素前多出逗号");
+        rejectedArray("[{\"id\":\"1\" \"name\":\"a\"}]", "元素内成员之间缺少逗号");
+        System.out.println("全部通过");
+    }
+
+    private static Map<String, String> parse(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return SimpleMessageApplication.parseJsonToMap(bytes, 0, bytes.length);
+    }
+
+    private static void rejected(String json, String description) {
+        try {
+            parse(json);
+        } catch (IllegalArgumentException e) {
+            System.out.println(description + ": 通过（" + e.getMessage() + "）");
+            return;
+        }
+        throw new AssertionError(description + "应被拒绝: " + json);
+    }
+
+    private static void rejectedArray(String json, String description) {
+        try {
+            FileMessageRepository.jsonToMessages(json.getBytes(StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            System.out.println(description + ": 通过（" + e.getMessage() + "）");
+            return;
+        }
+        throw new AssertionError(description + "应被拒绝: " + json);
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
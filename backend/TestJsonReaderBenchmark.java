@@ -0,0 +1,155 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基准测试：单遍字节解析器(JsonReader)与原正则解析，分别解析messages.json快照与POST请求体。
+ * 生成的数据不含引号、花括号与转义（原正则解析无法处理这些内容），两种方式的结果先逐条比较，再分别计时。
+ * 用法：java -cp <classes> com.resume.message.TestJsonReaderBenchmark [快照留言条数] [计时轮数]
+ */
+public class TestJsonReaderBenchmark {
+    // 防止计算结果被JIT消除
+    private static long sink;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        StringBuilder snapshot = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                snapshot.append(",");
+            }
+            snapshot.append("{\"id\":\"").append(1000000 + i).append("\",\"name\":\"访客").append(i)
+                    .append("\",\"email\":\"visitor").append(i).append("@example.com\",\"content\":\"")
+                    .append("您的简历网站设计得很有特色，希望能与您进一步交流。Looking forward to hearing from you. #")
+                    .append(i).append("\",\"createTime\":\"2025-12-15 15:54:22\"}");
+        }
+        String snapshotJson = snapshot.append("]").toString();
+        byte[] snapshotBytes = snapshotJson.getBytes(StandardCharsets.UTF_8);
+        String body = "{\"name\":\"访客\",\"email\":\"visitor@example.com\","
+                + "\"content\":\"您的简历网站设计得很有特色，希望能与您进一步交流。Looking forward to hearing from you.\"}";
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+
+        List<Message> expected = regexMessages(snapshotJson);
+        List<Message> actual = FileMessageRepository.jsonToMessages(snapshotBytes);
+        check(expected.size() == count && actual.size() == count, "解析条数不一致");
+        for (int i = 0; i < count; i++) {
+            Message a = expected.get(i);
+            Message b = actual.get(i);
+            check(a.getId().equals(b.getId()) && a.getName().equals(b.getName()) && a.getEmail().equals(b.getEmail())
+                    && a.getContent().equals(b.getContent()) && a.getCreateTime().equals(b.getCreateTime()),
+                    "第" + i + "条解析结果不一致");
+        }
+        check(regexMap(body).equals(SimpleMessageApplication.parseJsonToMap(bodyBytes, 0, bodyBytes.length)),
+                "请求体解析结果不一致");
+
+        System.out.println("快照: " + count + " 条, " + snapshotBytes.length / 1024 + " KB");
+        double regexSnapshot = time(rounds, () -> regexMessages(snapshotJson).size());
+        double readerSnapshot = time(rounds, () -> FileMessageRepository.jsonToMessages(snapshotBytes).size());
+        report("原正则解析", regexSnapshot, snapshotBytes.length);
+        report("JsonReader", readerSnapshot, snapshotBytes.length);
+        System.out.printf("快照解析加速 %.1f 倍%n", regexSnapshot / readerSnapshot);
+
+        int bodies = 100000;
+        double regexBody = time(rounds, () -> {
+            int fields = 0;
+            for (int i = 0; i < bodies; i++) {
+                fields += regexMap(body).size();
+            }
+            return fields;
+        });
+        double readerBody = time(rounds, () -> {
+            int fields = 0;
+            for (int i = 0; i < bodies; i++) {
+                fields += SimpleMessageApplication.parseJsonToMap(bodyBytes, 0, bodyBytes.length).size();
+            }
+            return fields;
+        });
+        System.out.printf("请求体: 每轮 %d 个%n", bodies);
+        System.out.printf("%-12s %8.0f ns/个%n", "原正则解析", regexBody * 1e6 / bodies);
+        System.out.printf("%-12s %8.0f ns/个%n", "JsonReader", readerBody * 1e6 / bodies);
+        System.out.printf("请求体解析加速 %.1f 倍%n", regexBody / readerBody);
+        System.out.println("(校验值 " + sink + ")");
+    }
+
+    private interface Work {
+        long run();
+    }
+
+    // 先预热同样轮数，再取计时轮的中位数（毫秒）
+    private static double time(int rounds, Work work) {
+        for (int i = 0; i < rounds; i++) {
+            sink += work.run();
+        }
+        double[] millis = new double[rounds];
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            sink += work.run();
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis[rounds / 2];
+    }
+
+    private static void report(String name, double millis, int bytes) {
+        System.out.printf("%-12s %8.2f ms  %7.1f MB/s%n", name, millis, bytes / 1048576.0 / (millis / 1000));
+    }
+
+    // 原jsonToMessages：按花括号切分后对每个字段各编译一个正则
+    private static List<Message> regexMessages(String json) {
+        List<Message> messages = new ArrayList<>();
+        Matcher matcher = Pattern.compile("\\{([^}]*)\\}").matcher(json);
+        while (matcher.find()) {
+            String messageJson = "{" + matcher.group(1) + "}";
+            Message message = new Message();
+            Matcher id = Pattern.compile("\"id\":\"([^\"]*)\"").matcher(messageJson);
+            if (id.find()) {
+                message.setId(id.group(1));
+            }
+            Matcher name = Pattern.compile("\"name\":\"([^\"]*)\"").matcher(messageJson);
+            if (name.find()) {
+                message.setName(name.group(1));
+            }
+            Matcher email = Pattern.compile("\"email\":\"([^\"]*)\"").matcher(messageJson);
+            if (email.find()) {
+                message.setEmail(email.group(1));
+            }
+            Matcher content = Pattern.compile("\"content\":\"([^\"]*)\"").matcher(messageJson);
+            if (content.find()) {
+                message.setContent(content.group(1));
+            }
+            Matcher createTime = Pattern.compile("\"createTime\":\"([^\"]*)\"").matcher(messageJson);
+            if (createTime.find()) {
+                message.setCreateTime(createTime.group(1));
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    // 原parseJsonToMap
+    private static Map<String, String> regexMap(String json) {
+        Map<String, String> map = new HashMap<>();
+        Matcher matcher = Pattern.compile("\"([^\"]*)\":\"([^\"]*)\"").matcher(json);
+        while (matcher.find()) {
+            map.put(matcher.group(1), matcher.group(2));
+        }
+        return map;
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.resume.message;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 测试JsonStreamWriter的字符串转义：逐个检查全部控制字符(U+0000~U+001F)、U+2028/U+2029、代理对与孤立代理字符，
+ * 以及跨越缓冲区边界与转义字符边界的成段编码；输出与原escapeJson（String.replace链）逐字节比较，
+ * 原escapeJson不转义的控制字符按JSON规范比较，并用JsonReader解析回原字符串。
+ * 用法：java -cp <classes> com.resume.message.TestJsonStreamWriter [随机用例数]
+ */
+public class TestJsonStreamWriter {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int randomCases = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int checked = 0;
+
+        // 每个控制字符单独出现、出现在普通文本与中文之间
+        for (char c = 0; c < 0x20; c++) {
+            checked += check(String.valueOf(c));
+            checked += check("a" + c + "b");
+            checked += check("留" + c + "言");
+        }
+        // 原escapeJson同样处理的字符
+        checked += check("引号\"与反斜杠\\，换行\n回车\r制表\t");
+        checked += check("\\\"\\\"");
+        checked += check("");
+        checked += check(null);
+        // JSON允许原样输出的行分隔符与段分隔符
+        checked += check("\u2028\u2029");
+        checked += check("段落\u2028行\u2029结束");
+        // 代理对编码为4字节，孤立的代理字符替换为'?'
+        checked += check("表情\uD83D\uDE00符号\uD83C\uDF89");
+        checked += check("\uD83D\uDE00");
+        checked += check("孤立高位\uD83D");
+        checked += check("\uDE00孤立低位");
+        checked += check("\uDE00\uD83D");
+        checked += check("\u007F\u0080\u07FF\u0800\uFFFF");
+
+        // 成段编码在缓冲区将满时返回：让各种宽度的字符与转义恰好落在缓冲区边界两侧
+        String[] pieces = {"a", "é", "中", "\uD83D\uDE00", "\n", "\u0001", "\""};
+        for (String piece : pieces) {
+            for (int prefix = BUFFER_SIZE - 12; prefix <= BUFFER_SIZE + 2; prefix++) {
+                checked += check(repeat('x', prefix) + piece + "尾");
+                checked += check(repeat('中', prefix / 3) + repeat('x', prefix % 3) + piece + "尾");
+            }
+        }
+        // 长文本跨越多个缓冲区
+        checked += check(repeat('中', BUFFER_SIZE * 2 + 7));
+        checked += check(repeat('\u0001', BUFFER_SIZE + 3));
+
+        // 随机混合各类字符
+        Random random = new Random(20240101L);
+        char[] alphabet = {'a', 'Z', '0', ' ', '"', '\\', '/', '\n', '\r', '\t', '\b', '\f', '\u0000', '\u001F',
+                '\u007F', 'é', 'ß', '中', '文', 'あ', '한', '\u2028', '\u2029', '\uFFFD', '\uD83D', '\uDE00'};
+        for (int i = 0; i < randomCases; i++) {
+            int length = random.nextInt(i % 10 == 0 ? BUFFER_SIZE * 2 : 64);
+            char[] text = new char[length];
+            for (int j = 0; j < length; j++) {
+                text[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            checked += check(new String(text));
+        }
+        System.out.println(checked + " 个用例全部通过");
+    }
+
+    // 检查一个字符串的输出，返回1
+    private static int check(String value) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonStreamWriter writer = new JsonStreamWriter(out)) {
+            writer.string(value);
+        }
+        byte[] actual = out.toByteArray();
+        byte[] expected = ("\"" + reference(value) + "\"").getBytes(StandardCharsets.UTF_8);
+        if (!Arrays.equals(actual, expected)) {
+            throw new AssertionError("输出不一致: " + describe(value) + "\n期望 " + describe(new String(expected,
+                    StandardCharsets.UTF_8)) + "\n实际 " + describe(new String(actual, StandardCharsets.UTF_8)));
+        }
+        // 能编码的字符串应原样解析回来；孤立代理字符被替换，跳过
+        if (value != null && !hasLoneSurrogate(value)) {
+            String parsed = new JsonReader(actual).nextString();
+            if (!value.equals(parsed)) {
+                throw new AssertionError("解析结果不一致: " + describe(value) + " -> " + describe(parsed));
+            }
+        }
+        return 1;
+    }
+
+    // 原escapeJson，并补上它遗漏的控制字符转义（\b、\f与其余的反斜杠u00XX）
+    private static String reference(String str) {
+        if (str == null) {
+            return "";
+        }
+        String escaped = str.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r")
+                .replace("\t", "\\t");
+        StringBuilder result = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c == '\b') {
+                result.append("\\b");
+            } else if (c == '\f') {
+                result.append("\\f");
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static boolean hasLoneSurrogate(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    // 非ASCII可打印字符显示为十六进制转义，长字符串只显示开头
+    private static String describe(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < Math.min(value.length(), 80); i++) {
+            char c = value.charAt(i);
+            text.append(c >= 0x20 && c < 0x7F ? String.valueOf(c) : String.format("\\u%04X", (int) c));
+        }
+        return value.length() > 80 ? text + "...(" + value.length() + "字符)" : text.toString();
+    }
+}
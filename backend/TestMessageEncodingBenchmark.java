@@ -0,0 +1,154 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基准测试：GET留言列表的序列化。比较三种方式输出同一页留言：
+ * 1. 原messagesToJson：每次请求对每个字段调用escapeJson（String.replace链）拼接字符串，再整体编码为UTF-8；
+ * 2. JsonStreamWriter逐字段转义编码（留言未预编码）；
+ * 3. JsonStreamWriter复制新增/加载时预编码的字节（当前读路径）。
+ * 三种输出先逐字节比较，再分别计时。
+ * 用法：java -cp <classes> com.resume.message.TestMessageEncodingBenchmark [每页条数] [每轮页数] [计时轮数]
+ */
+public class TestMessageEncodingBenchmark {
+    // 防止计算结果被JIT消除
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int pageSize = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        List<Message> plain = new ArrayList<>();
+        List<Message> encoded = new ArrayList<>();
+        for (int i = 0; i < pageSize; i++) {
+            plain.add(message(i));
+            Message message = message(i);
+            message.preEncode();
+            encoded.add(message);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        byte[] expected = concatenate(plain);
+        check(Arrays.equals(expected, stream(plain, out)), "逐字段编码的输出与原messagesToJson不一致");
+        check(Arrays.equals(expected, stream(encoded, out)), "预编码的输出与原messagesToJson不一致");
+
+        System.out.println("每页 " + pageSize + " 条, " + expected.length + " 字节, 每轮 " + pages + " 页");
+        double concatenated = time(rounds, () -> {
+            long bytes = 0;
+            for (int i = 0; i < pages; i++) {
+                bytes += concatenate(plain).length;
+            }
+            return bytes;
+        });
+        double streamed = time(rounds, () -> {
+            long bytes = 0;
+            for (int i = 0; i < pages; i++) {
+                bytes += stream(plain, out).length;
+            }
+            return bytes;
+        });
+        double copied = time(rounds, () -> {
+            long bytes = 0;
+            for (int i = 0; i < pages; i++) {
+                bytes += stream(encoded, out).length;
+            }
+            return bytes;
+        });
+        report("原messagesToJson", concatenated, pages, expected.length);
+        report("逐字段编码", streamed, pages, expected.length);
+        report("预编码复制", copied, pages, expected.length);
+        System.out.printf("预编码相对原messagesToJson加速 %.1f 倍，相对逐字段编码加速 %.1f 倍%n",
+                concatenated / copied, streamed / copied);
+        System.out.println("(校验值 " + sink + ")");
+    }
+
+    // 内容含中文、引号、反斜杠、换行与制表符，都在原escapeJson处理的范围内，三种输出可以逐字节比较
+    private static Message message(int i) {
+        Message message = new Message();
+        message.setId(Long.toString(7200000000000000L + i));
+        message.setName("访客" + i);
+        message.setEmail("visitor" + i + "@example.com");
+        message.setContent("您的简历网站设计得很有特色，希望能与您进一步交流。\n"
+                + "Looking forward to hearing from you: \"project\\demo\"\t#" + i);
+        message.setCreateTimeMillis(1765785262000L - i * 1000L);
+        return message;
+    }
+
+    private interface Work {
+        long run() throws IOException;
+    }
+
+    // 先预热同样轮数，再取计时轮的中位数（毫秒）
+    private static double time(int rounds, Work work) throws IOException {
+        for (int i = 0; i < rounds; i++) {
+            sink += work.run();
+        }
+        double[] millis = new double[rounds];
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            sink += work.run();
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis[rounds / 2];
+    }
+
+    private static void report(String name, double millis, int pages, int pageBytes) {
+        System.out.printf("%-16s %8.2f us/页  %7.1f MB/s%n", name, millis * 1000 / pages,
+                (double) pageBytes * pages / 1048576.0 / (millis / 1000));
+    }
+
+    private static byte[] stream(List<Message> messages, ByteArrayOutputStream out) throws IOException {
+        out.reset();
+        try (JsonStreamWriter writer = new JsonStreamWriter(out)) {
+            writer.messages(messages);
+        }
+        return out.toByteArray();
+    }
+
+    // 原messagesToJson与messageToJson，响应时整体编码为UTF-8
+    private static byte[] concatenate(List<Message> messages) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                json.append(",");
+            }
+            Message message = messages.get(i);
+            json.append("{" +
+                    "\"id\":\"" + escapeJson(message.getId()) + "\"," +
+                    "\"name\":\"" + escapeJson(message.getName()) + "\"," +
+                    "\"email\":\"" + escapeJson(message.getEmail()) + "\"," +
+                    "\"content\":\"" + escapeJson(message.getContent()) + "\"," +
+                    "\"createTime\":\"" + escapeJson(message.getCreateTime()) + "\"" +
+                    "}");
+        }
+        json.append("]");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 原escapeJson
+    private static String escapeJson(String str) {
+        if (str == null) {
+            return "";
+        }
+        return str.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r")
+                .replace("\t", "\\t");
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.resume.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 测试nio传输层的请求行校验与响应分帧（用原始套接字收发，检查实际的字节）：
+ * 1. 不透明URI（mailto:x）与星号形式（*）的请求目标返回400，事件循环继续处理后续连接；
+ * 2. 长度未知的响应对HTTP/1.1使用chunked，对HTTP/1.0不加分块帧、带Connection: close并以关闭连接结束响应体；
+ * 3. 超过一个缓冲区(16KB)的留言列表经流式写出，HTTP/1.0与HTTP/1.1客户端读到的JSON相同（使用memory存储）；
+ *    超过数据库列长度的留言返回400，恰好等于上限的可以保存；
+ * 4. chunked请求体：nio传输层返回411；jdk传输层读入池化缓冲区，恰好等于http.maxRequestBytes时接受，多一个字节返回413。
+ * 用法：java -cp <classes> com.resume.message.TestNioHttpTransport
+ */
+public class TestNioHttpTransport {
+    private static final int PORT = 19082;
+    // chunked请求体用例使用的jdk传输层端口
+    private static final int JDK_PORT = 19083;
+    // 超过响应流的缓冲区，保证分多次提交
+    private static final int STREAM_BYTES = 40 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        // 留言列表用例使用仅内存存储，须在SimpleMessageApplication初始化之前设置
+        System.setProperty("message.repository", "memory");
+        final byte[] streamed = new byte[STREAM_BYTES];
+        for (int i = 0; i < streamed.length; i++) {
+            streamed[i] = (byte) ('a' + i % 26);
+        }
+        // 单个事件循环、处理器在事件循环线程上执行：事件循环一旦终止，之后的连接都得不到响应
+        HttpTransport transport = new NioHttpTransport(new InetSocketAddress(PORT), null, 1, 16 * 1024, 30);
+        transport.createContext("/", exchange -> {
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        transport.createContext("/stream", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < streamed.length; i += 1000) {
+                    out.write(streamed, i, Math.min(1000, streamed.length - i));
+                }
+            }
+        });
+        transport.start();
+        try {
+            Response opaque = request("GET mailto:x HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            check(opaque.status == 400, "不透明URI应返回400，实际为" + opaque.status);
+            Response asterisk = request("OPTIONS * HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            check(asterisk.status == 400, "星号形式的请求目标应返回400，实际为" + asterisk.status);
+            Response after = request("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+            check(after.status == 200 && "ok".equals(new String(after.body, StandardCharsets.UTF_8)),
+                    "错误请求之后事件循环应继续工作，实际为" + after.status);
+            System.out.println("非路径形式的请求目标返回400，事件循环继续工作: 通过");
+
+            Response http11 = request("GET /stream HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+            check(http11.status == 200, "HTTP/1.1流式响应状态为" + http11.status);
+            check("chunked".equalsIgnoreCase(http11.headers.get("transfer-encoding")), "HTTP/1.1应使用chunked");
+            check(Arrays.equals(streamed, http11.body), "HTTP/1.1分块解码后的响应体不一致");
+            System.out.println("HTTP/1.1流式响应使用chunked: 通过");
+
+            Response http10 = request("GET /stream HTTP/1.0\r\n\r\n");
+            check(http10.status == 200, "HTTP/1.0流式响应状态为" + http10.status);
+            check(!http10.headers.containsKey("transfer-encoding"), "HTTP/1.0响应不应带Transfer-Encoding");
+            check("close".equalsIgnoreCase(http10.headers.get("connection")), "HTTP/1.0流式响应应带Connection: close");
+            check(Arrays.equals(streamed, http10.body), "HTTP/1.0响应体应为不带分块帧的原始字节");
+            Response keepAlive10 = request("GET /stream HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+            check(Arrays.equals(streamed, keepAlive10.body)
+                    && "close".equalsIgnoreCase(keepAlive10.headers.get("connection")),
+                    "请求keep-alive的HTTP/1.0流式响应也应以关闭连接结束");
+            Response head10 = request("HEAD /stream HTTP/1.0\r\n\r\n");
+            check(head10.status == 200 && head10.body.length == 0, "HTTP/1.0的HEAD请求不应有响应体");
+            System.out.println("HTTP/1.0流式响应不分块、以关闭连接结束: 通过");
+
+            testMessageList(transport);
+            testChunkedBodies();
+        } finally {
+            transport.stop();
+        }
+        System.out.println("全部通过");
+    }
+
+    // 新增足够多的留言，使一页列表超过JsonStreamWriter的16KB缓冲区，走chunked流式写出路径
+    private static void testMessageList(HttpTransport transport) throws IOException {
+        transport.createContext("/messages", new SimpleMessageApplication.MessageApiHandler());
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            content.append("流式写出的留言列表，").append(i).append(" chunked framing; ");
+        }
+        for (int i = 0; i < 80; i++) {
+            Response added = post("访客" + i, "visitor" + i + "@example.com", content.toString() + i);
+            check(added.status == 200, "新增留言返回" + added.status);
+        }
+        char[] longest = new char[SimpleMessageApplication.MAX_CONTENT_LENGTH + 1];
+        Arrays.fill(longest, '长');
+        check(post("访客", "visitor@example.com", new String(longest)).status == 400, "超过500个字符的留言应返回400");
+        check(post("访客", "visitor@example.com", new String(longest, 1, longest.length - 1)).status == 200,
+                "恰好500个字符的留言应可以保存");
+        check(post(new String(longest, 0, 51), "visitor@example.com", "内容").status == 400, "超过50个字符的昵称应返回400");
+
+        Response http11 = request("GET /messages?limit=100 HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+        check(http11.status == 200 && "chunked".equalsIgnoreCase(http11.headers.get("transfer-encoding")),
+                "HTTP/1.1的大列表应使用chunked");
+        check(http11.body.length > 16 * 1024, "列表只有" + http11.body.length + "字节，未超过缓冲区");
+        Response http10 = request("GET /messages?limit=100 HTTP/1.0\r\n\r\n");
+        check(http10.status == 200, "HTTP/1.0的大列表返回" + http10.status);
+        check(!http10.headers.containsKey("transfer-encoding"), "HTTP/1.0的大列表不应带Transfer-Encoding");
+        check(Arrays.equals(http11.body, http10.body), "HTTP/1.0与HTTP/1.1读到的列表不一致");
+        JsonReader reader = new JsonReader(http10.body);
+        reader.beginObject();
+        int messages = 0;
+        while (reader.hasNext()) {
+            if ("data".equals(reader.nextName())) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    SimpleMessageApplication.readMessage(reader);
+                    messages++;
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        check(messages == 82, "HTTP/1.0读到" + messages + "条留言，应为82条");
+        System.out.println("超过16KB的留言列表(" + http10.body.length + "字节)对HTTP/1.0可读: 通过");
+    }
+
+    // 默认的http.maxRequestBytes与池化缓冲区同为16KB：用空白把请求体补到恰好上限与多一个字节
+    private static void testChunkedBodies() throws IOException {
+        String json = "{\"name\":\"分块\",\"email\":\"chunked@example.com\",\"content\":\"chunked请求体\"}";
+        Response nio = request(chunkedPost(json, 0));
+        check(nio.status == 411, "nio传输层的chunked请求应返回411，实际为" + nio.status);
+
+        HttpTransport jdk = new JdkHttpTransport(new InetSocketAddress(JDK_PORT), null);
+        jdk.createContext("/messages", new SimpleMessageApplication.MessageApiHandler());
+        jdk.start();
+        try {
+            int jsonBytes = json.getBytes(StandardCharsets.UTF_8).length;
+            int limit = SimpleMessageApplication.MAX_REQUEST_BYTES;
+            check(request(JDK_PORT, chunkedPost(json, 0)).status == 200, "chunked请求体应可以保存");
+            check(request(JDK_PORT, chunkedPost(json, limit - jsonBytes)).status == 200,
+                    "恰好" + limit + "字节的chunked请求体应可以保存");
+            int tooLarge = request(JDK_PORT, chunkedPost(json, limit - jsonBytes + 1)).status;
+            check(tooLarge == 413, "超过" + limit + "字节的chunked请求体应返回413，实际为" + tooLarge);
+            System.out.println("chunked请求体按上限读取: 通过");
+        } finally {
+            jdk.stop();
+        }
+    }
+
+    // 请求体为json后补padding个空格，分成4KB的块发送
+    private static String chunkedPost(String json, int padding) {
+        char[] spaces = new char[padding];
+        Arrays.fill(spaces, ' ');
+        byte[] body = (json + new String(spaces)).getBytes(StandardCharsets.UTF_8);
+        StringBuilder raw = new StringBuilder("POST /messages HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n"
+                + "Content-Type: application/json\r\nTransfer-Encoding: chunked\r\n\r\n");
+        for (int i = 0; i < body.length; i += 4096) {
+            int size = Math.min(4096, body.length - i);
+            raw.append(Integer.toHexString(size)).append("\r\n")
+                    .append(new String(body, i, size, StandardCharsets.ISO_8859_1)).append("\r\n");
+        }
+        return raw.append("0\r\n\r\n").toString();
+    }
+
+    private static Response post(String name, String email, String content) throws IOException {
+        byte[] body = ("{\"name\":\"" + name + "\",\"email\":\"" + email + "\",\"content\":\"" + content + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        return request("POST /messages HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n"
+                + "Content-Type: application/json\r\nContent-Length: " + body.length + "\r\n\r\n"
+                + new String(body, StandardCharsets.ISO_8859_1));
+    }
+
+    static final class Response {
+        int status;
+        final Map<String, String> headers = new HashMap<>();
+        byte[] body;
+    }
+
+    // 发送原始请求并读到服务端关闭连接为止；响应为chunked时解码
+    static Response request(String raw) throws IOException {
+        return request(PORT, raw);
+    }
+
+    static Response request(int port, String raw) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write(raw.getBytes(StandardCharsets.ISO_8859_1));
+            socket.getOutputStream().flush();
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                received.write(buffer, 0, read);
+            }
+            return parse(received.toByteArray());
+        }
+    }
+
+    private static Response parse(byte[] bytes) {
+        int headerEnd = indexOf(bytes, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1), 0);
+        check(headerEnd > 0, "响应没有完整的响应头");
+        String[] lines = new String(bytes, 0, headerEnd, StandardCharsets.ISO_8859_1).split("\r\n");
+        Response response = new Response();
+        response.status = Integer.parseInt(lines[0].split(" ")[1]);
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            response.headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                    lines[i].substring(colon + 1).trim());
+        }
+        byte[] body = Arrays.copyOfRange(bytes, headerEnd + 4, bytes.length);
+        response.body = "chunked".equalsIgnoreCase(response.headers.get("transfer-encoding")) ? dechunk(body) : body;
+        return response;
+    }
+
+    private static byte[] dechunk(byte[] bytes) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] crlf = {'\r', '\n'};
+        int position = 0;
+        while (true) {
+            int lineEnd = indexOf(bytes, crlf, position);
+            check(lineEnd > 0, "分块长度行不完整");
+            int size = Integer.parseInt(new String(bytes, position, lineEnd - position, StandardCharsets.ISO_8859_1)
+                    .trim(), 16);
+            position = lineEnd + 2;
+            if (size == 0) {
+                check(position + 2 == bytes.length, "最后一个分块之后有多余的数据");
+                return body.toByteArray();
+            }
+            check(position + size + 2 <= bytes.length && bytes[position + size] == '\r', "分块数据不完整");
+            body.write(bytes, position, size);
+            position += size + 2;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern, int from) {
+        for (int i = from; i + pattern.length <= bytes.length; i++) {
+            int j = 0;
+            while (j < pattern.length && bytes[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
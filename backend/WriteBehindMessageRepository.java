@@ -0,0 +1,509 @@
+package com.resume.message;
+
+import com.resume.message.SimpleMessageApplication.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 数据库存储的写后缓冲：新增留言写入本地发件日志(messages.outbox.log)并发布到内存缓存后即返回，
+// 由后台线程按条数或时间间隔把留言批量写入数据库，连接等错误退避后重试，直到成功；
+// 因数据本身（超长、违反约束）失败的批次逐条重写，写不进数据库的留言移入死信文件，不阻塞之后的留言。
+// 读请求优先由缓存（最新的cacheSize条及尚未写入数据库的留言）提供，更旧的分页才查询数据库。
+// 发件日志由组提交线程写入，日志变大且其中的留言都已写入数据库后清空；
+// 崩溃后重放发件日志，数据库中已有的留言不再重复写入。
+// 缓存只包含本实例写入的留言，数据库只应由一个写后缓冲实例写入
+final class WriteBehindMessageRepository implements MessageRepository {
+    private final JdbcMessageRepository database;
+    private final MessageStore store = new MessageStore(1024);
+    private final MessageLog outbox;
+    // 无法写入数据库的留言，每行一个JSON对象（error为失败原因，message为留言）
+    private final Path deadLetterFile;
+    private final GroupCommitWriter writer;
+    private final int cacheSize;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    // 尚未写入数据库的留言，按提交顺序排列；写入成功后才移除。访问时以它自身为锁，与open()的锁分开
+    private final ArrayDeque<Pending> unflushed = new ArrayDeque<>();
+    private final Thread flusher;
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong lastFlushMillis = new AtomicLong();
+    // 缓存下方的数据库中是否还有更旧的留言
+    private volatile boolean olderInDatabase;
+    private volatile boolean running = true;
+    // 以下字段只由组提交线程访问
+    private int nextTrimAt;
+    // 只由后台写入线程访问，第一次写入死信时打开
+    private FileChannel deadLetters;
+
+    WriteBehindMessageRepository(JdbcMessageRepository database, Path outboxFile, Path deadLetterFile) {
+        this.database = database;
+        this.outbox = new MessageLog(outboxFile);
+        this.deadLetterFile = deadLetterFile;
+        // 缓存的留言条数、每批写入数据库的条数与最长等待时间
+        this.cacheSize = Math.max(1, SimpleMessageApplication.configInt("writeBehind.cacheSize", 1000));
+        this.batchSize = Math.max(1, SimpleMessageApplication.configInt("writeBehind.batchSize", 100));
+        this.flushIntervalMillis = Math.max(0, SimpleMessageApplication.configInt("writeBehind.flushIntervalMs", 200));
+        this.nextTrimAt = cacheSize * 2;
+        // 发件日志超过outboxBytes后尝试清空
+        this.writer = new GroupCommitWriter(outbox, store, null,
+                SimpleMessageApplication.configInt("log.batchSize", 256),
+                SimpleMessageApplication.configInt("log.commitIntervalMs", 1),
+                this::awaitFlushed,
+                SimpleMessageApplication.configInt("writeBehind.outboxBytes", 1024 * 1024),
+                this::committed);
+        this.flusher = new Thread(this::flushLoop, "message-write-behind");
+        this.flusher.setDaemon(true);
+        Metrics.register("writeBehind.pending", this::pendingCount);
+        Metrics.register("writeBehind.lagMillis", this::lagMillis);
+        Metrics.register("writeBehind.flushed", flushed::get);
+        Metrics.register("writeBehind.batches", batches::get);
+        Metrics.register("writeBehind.failures", failures::get);
+        Metrics.register("writeBehind.deadLettered", deadLettered::get);
+        Metrics.register("writeBehind.lastFlushMillis", lastFlushMillis::get);
+    }
+
+    // 重放发件日志，找出尚未写入数据库的留言，再从数据库加载最新的留言作为缓存
+    @Override
+    public synchronized void open() throws IOException {
+        if (store.snapshot() != null) {
+            return;
+        }
+        database.open();
+        List<Message> recovered = new ArrayList<>();
+        Set<String> deadLetterIds = deadLetterIds();
+        for (Message message : outbox.replay()) {
+            // 写入数据库后、清空日志前崩溃时，日志中的留言已在数据库中；按留言id判断。已移入死信的不再重写
+            if (!deadLetterIds.contains(message.getId()) && !database.exists(message)) {
+                recovered.add(message);
+            }
+        }
+        outbox.open();
+
+        Page newest = database.page(cacheSize, null, null);
+        olderInDatabase = newest.hasOlder;
+        List<Message> cached = new ArrayList<>(newest.messages);
+        Message welcome = null;
+        if (cached.isEmpty() && recovered.isEmpty()) {
+            welcome = MessageRepository.welcomeMessage();
+        }
+        cached.addAll(recovered);
+        store.load(cached, Collections.emptyList());
+        long now = System.nanoTime();
+        for (Message message : recovered) {
+            unflushed.add(new Pending(message, now));
+        }
+        if (!recovered.isEmpty()) {
+            System.err.println("发件日志中有 " + recovered.size() + " 条留言尚未写入数据库，将重新写入");
+        }
+
+        // 此后组提交线程是缓存唯一的写者
+        flusher.start();
+        writer.start();
+        if (welcome != null) {
+            awaitDurable(writer.submit(welcome));
+        }
+    }
+
+    // 发件日志落盘并发布到缓存后返回，不等待数据库
+    @Override
+    public void add(Message message) throws IOException {
+        snapshot();
+        awaitDurable(writer.submit(message));
+    }
+
+    // 游标落在缓存范围内时由缓存提供，页尾超出缓存时用数据库中更旧的留言补足
+    @Override
+    public Page page(int limit, MessageCursor before, MessageCursor after) throws IOException {
+        MessageStore.Snapshot cache = snapshot();
+        int size = cache.size();
+        if (size == 0) {
+            return database.page(limit, before, after);
+        }
+        MessageCursor bottom = MessageCursor.of(cache.get(size - 1));
+        if (after != null) {
+            return after.compareTo(bottom) <= 0 ? cache.page(limit, null, after) : newerFromDatabase(limit, after, cache, bottom);
+        }
+        if (before != null && before.compareTo(bottom) >= 0) {
+            return olderFromDatabase(new ArrayList<>(limit), limit, before, true);
+        }
+        Page cached = cache.page(limit, before, null);
+        int count = cached.messages.size();
+        if (cached.hasOlder || !olderInDatabase) {
+            return cached;
+        }
+        if (count == limit) {
+            // 恰好取到缓存末尾，数据库中还有更旧的留言
+            return new Page(cached.messages, true, cached.hasNewer);
+        }
+        return olderFromDatabase(new ArrayList<>(cached.messages), limit, bottom, cached.hasNewer);
+    }
+
+    // 不比缓存末尾旧的留言只可能在缓存中，更旧的查询数据库
+    @Override
+    public Message find(MessageCursor cursor) throws IOException {
+        MessageStore.Snapshot cache = snapshot();
+        if (cache.size() > 0 && cursor.compareTo(cache.get(cache.size() - 1)) <= 0) {
+            return cache.find(cursor);
+        }
+        return database.find(cursor);
+    }
+
+    // 按同样的分界在缓存中查找，其余的合并为一次数据库查询
+    @Override
+    public List<Message> findAll(List<MessageCursor> cursors) throws IOException {
+        MessageStore.Snapshot cache = snapshot();
+        Message bottom = cache.size() > 0 ? cache.get(cache.size() - 1) : null;
+        List<Message> found = new ArrayList<>(cursors.size());
+        List<MessageCursor> older = new ArrayList<>();
+        List<Integer> olderAt = new ArrayList<>();
+        for (MessageCursor cursor : cursors) {
+            if (bottom != null && cursor.compareTo(bottom) <= 0) {
+                found.add(cache.find(cursor));
+            } else {
+                olderAt.add(found.size());
+                older.add(cursor);
+                found.add(null);
+            }
+        }
+        if (!older.isEmpty()) {
+            List<Message> fromDatabase = database.findAll(older);
+            for (int i = 0; i < olderAt.size(); i++) {
+                found.set(olderAt.get(i), fromDatabase.get(i));
+            }
+        }
+        return found;
+    }
+
+    // 数据库可能被其他工具修改，不做响应缓存
+    @Override
+    public long version() {
+        return -1;
+    }
+
+    // 先写完发件日志队列，再尽量把剩余留言写入数据库；数据库不可用时留在发件日志中，下次启动重新写入
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        running = false;
+        synchronized (unflushed) {
+            unflushed.notifyAll();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        outbox.close();
+        if (deadLetters != null) {
+            deadLetters.close();
+        }
+        database.close();
+    }
+
+    private MessageStore.Snapshot snapshot() throws IOException {
+        MessageStore.Snapshot snapshot = store.snapshot();
+        if (snapshot == null) {
+            open();
+            snapshot = store.snapshot();
+        }
+        return snapshot;
+    }
+
+    // 从数据库中取比游标旧的留言补足一页。缓存中的留言写入数据库后id不变，
+    // 游标不比缓存末尾新时，键集查询取到的都是缓存之外更旧的留言
+    private Page olderFromDatabase(List<Message> messages, int limit, MessageCursor before, boolean hasNewer)
+            throws IOException {
+        Page older = database.page(limit - messages.size(), before, null);
+        messages.addAll(older.messages);
+        return new Page(messages, older.hasOlder, hasNewer);
+    }
+
+    // 比缓存末尾旧的游标向新翻页：只保留数据库中比缓存末尾旧的记录（其余都在缓存中），
+    // 不足一页时用缓存中最旧的留言补足
+    private Page newerFromDatabase(int limit, MessageCursor after, MessageStore.Snapshot cache,
+                                   MessageCursor bottom) throws IOException {
+        List<Message> older = new ArrayList<>(limit);
+        for (Message row : database.page(limit, null, after).messages) {
+            if (bottom.compareTo(row) < 0) {
+                older.add(row);
+            }
+        }
+        int fromCache = Math.min(limit - older.size(), cache.size());
+        List<Message> messages = new ArrayList<>(fromCache + older.size());
+        messages.addAll(cache.subList(cache.size() - fromCache, cache.size()));
+        messages.addAll(older);
+        // 缓存中还有未放入本页的留言时才有更新的留言；游标本身更旧
+        return new Page(messages, true, fromCache < cache.size());
+    }
+
+    // 组提交线程中调用：留言已写入发件日志并发布到缓存，交给后台线程写入数据库，再按需收缩缓存
+    private void committed(List<Message> messages) {
+        long now = System.nanoTime();
+        synchronized (unflushed) {
+            for (Message message : messages) {
+                unflushed.add(new Pending(message, now));
+            }
+            unflushed.notifyAll();
+        }
+        trimCache();
+    }
+
+    // 缓存达到cacheSize的两倍时丢弃最旧的部分，只保留最新的cacheSize条；
+    // 要丢弃的留言中还有未写入数据库的（数据库长时间不可用）时暂不收缩，等缓存再增长cacheSize条后重试
+    private void trimCache() {
+        MessageStore.Snapshot current = store.snapshot();
+        if (current.size() < nextTrimAt) {
+            return;
+        }
+        MessageCursor boundary = MessageCursor.of(current.get(cacheSize));
+        synchronized (unflushed) {
+            for (Pending pending : unflushed) {
+                if (boundary.compareTo(pending.message) <= 0) {
+                    nextTrimAt = current.size() + cacheSize;
+                    return;
+                }
+            }
+        }
+        // 先标记再收缩，读者不会把收缩后的缓存末尾当作全部留言的末尾
+        olderInDatabase = true;
+        store.trim(current.size() - cacheSize);
+        nextTrimAt = cacheSize * 2;
+    }
+
+    // 组提交线程在发件日志变大时调用：等待日志中的留言全部写入数据库，返回后日志即被清空；
+    // 此时日志中的留言都已交给后台线程，队列为空即表示都已写入
+    private void awaitFlushed() throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(1000, flushIntervalMillis * 4));
+        synchronized (unflushed) {
+            while (!unflushed.isEmpty()) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    throw new IOException("仍有 " + unflushed.size() + " 条留言未写入数据库");
+                }
+                try {
+                    unflushed.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("等待写入数据库时被中断");
+                }
+            }
+        }
+    }
+
+    // 后台写入线程：凑满batchSize条或首条等待超过flushInterval后写入一批；
+    // 因数据失败时整批已回滚，逐条重写以隔离出错的留言，其他错误指数退避后重试同一批
+    private void flushLoop() {
+        long backoffMillis = 0;
+        while (true) {
+            List<Message> batch;
+            try {
+                batch = nextBatch();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == null) {
+                return;
+            }
+            boolean written;
+            try {
+                database.insertAll(batch);
+                removeFlushed(batch.size(), batch.size());
+                written = true;
+            } catch (IOException | RuntimeException e) {
+                failures.incrementAndGet();
+                written = JdbcMessageRepository.isDataError(e) && insertEach(batch);
+                if (!written && !running) {
+                    System.err.println("关闭时无法写入数据库，留言保留在发件日志中: " + e.getMessage());
+                    return;
+                }
+                if (!written) {
+                    backoffMillis = Math.min(30_000, Math.max(100, backoffMillis * 2));
+                    System.err.println("批量写入数据库失败，" + backoffMillis + "毫秒后重试: " + e.getMessage());
+                    try {
+                        Thread.sleep(backoffMillis);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+            if (written) {
+                backoffMillis = 0;
+            }
+        }
+    }
+
+    // 逐条写入一批留言，因数据失败的留言移入死信文件；遇到其他错误时停止并返回false，
+    // 已处理的留言已从队列移除，重试从出错的那条开始
+    private boolean insertEach(List<Message> batch) {
+        for (Message message : batch) {
+            try {
+                database.insertAll(Collections.singletonList(message));
+                removeFlushed(1, 1);
+            } catch (IOException | RuntimeException e) {
+                if (!JdbcMessageRepository.isDataError(e)) {
+                    return false;
+                }
+                try {
+                    deadLetter(message, e);
+                } catch (IOException deadLetterFailed) {
+                    System.err.println("无法写入死信文件 " + deadLetterFile + ": " + deadLetterFailed.getMessage());
+                    return false;
+                }
+                removeFlushed(1, 0);
+            }
+        }
+        return true;
+    }
+
+    // 把无法写入数据库的留言追加到死信文件并落盘，之后才从队列移除，发件日志清空后不会丢失
+    private void deadLetter(Message message, Exception error) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+        try (JsonStreamWriter json = new JsonStreamWriter(line)) {
+            json.raw("{\"error\":").string(String.valueOf(error.getMessage()));
+            json.raw(",\"message\":").message(message).raw("}\n");
+        }
+        if (deadLetters == null) {
+            deadLetters = FileChannel.open(deadLetterFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(line.toByteArray());
+        while (buffer.hasRemaining()) {
+            deadLetters.write(buffer);
+        }
+        deadLetters.force(false);
+        deadLettered.incrementAndGet();
+        System.err.println("留言 " + message.getId() + " 无法写入数据库，已移入死信文件 " + deadLetterFile
+                + ": " + error.getMessage());
+    }
+
+    // 死信文件中已有的留言id
+    private Set<String> deadLetterIds() throws IOException {
+        Set<String> ids = new HashSet<>();
+        if (!Files.exists(deadLetterFile)) {
+            return ids;
+        }
+        for (String line : Files.readAllLines(deadLetterFile, StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                JsonReader reader = new JsonReader(line.getBytes(StandardCharsets.UTF_8));
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("message".equals(reader.nextName())) {
+                        ids.add(SimpleMessageApplication.readMessage(reader).getId());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } catch (IllegalArgumentException e) {
+                // 写入死信时崩溃留下的不完整行
+                System.err.println("死信文件中有无法解析的行，已忽略: " + e.getMessage());
+            }
+        }
+        return ids;
+    }
+
+    // 从队首移除已处理的count条，其中inserted条已写入数据库
+    private void removeFlushed(int count, int inserted) {
+        synchronized (unflushed) {
+            for (int i = 0; i < count; i++) {
+                unflushed.pollFirst();
+            }
+            unflushed.notifyAll();
+        }
+        if (inserted > 0) {
+            flushed.addAndGet(inserted);
+            batches.incrementAndGet();
+            lastFlushMillis.set(System.currentTimeMillis());
+        }
+    }
+
+    // 取出队首的一批（不移除，写入成功后才移除）；关闭且队列为空时返回null
+    private List<Message> nextBatch() throws InterruptedException {
+        synchronized (unflushed) {
+            while (unflushed.isEmpty()) {
+                if (!running) {
+                    return null;
+                }
+                unflushed.wait(100);
+            }
+            long deadline = unflushed.peekFirst().enqueuedNanos + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+            while (running && unflushed.size() < batchSize) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                unflushed.wait(remaining);
+            }
+            List<Message> batch = new ArrayList<>(Math.min(batchSize, unflushed.size()));
+            Iterator<Pending> iterator = unflushed.iterator();
+            while (batch.size() < batchSize && iterator.hasNext()) {
+                batch.add(iterator.next().message);
+            }
+            return batch;
+        }
+    }
+
+    private long pendingCount() {
+        synchronized (unflushed) {
+            return unflushed.size();
+        }
+    }
+
+    // 最旧一条未写入数据库的留言已等待的时间，即缓存领先数据库的时长
+    private long lagMillis() {
+        synchronized (unflushed) {
+            Pending oldest = unflushed.peekFirst();
+            return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.enqueuedNanos);
+        }
+    }
+
+    // 等待发件日志落盘。发件日志未打开时留言已发布到缓存并会写入数据库，只记录警告；
+    // 写入失败或写入线程已停止时留言既不在缓存中也不会写入数据库，抛出IOException，请求返回错误
+    private static void awaitDurable(CompletableFuture<Boolean> durable) throws IOException {
+        try {
+            if (!durable.get()) {
+                System.err.println("发件日志不可用，留言将直接写入数据库");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待发件日志落盘时被中断");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException("无法保存留言: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static final class Pending {
+        final Message message;
+        final long enqueuedNanos;
+
+        Pending(Message message, long enqueuedNanos) {
+            this.message = message;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
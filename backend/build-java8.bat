@@ -13,7 +13,7 @@ REM 创建输出目录
 if not exist target\classes-java8 mkdir target\classes-java8
 
 REM 编译Java源代码，指定目标版本为Java 8
-javac -d target\classes-java8 -cp "gson-2.9.0.jar" --release 8 SimpleMessageApplication.java
+javac -d target\classes-java8 -cp "gson-2.9.0.jar" --release 8 -encoding UTF-8 SimpleMessageApplication.java HttpTransport.java JdkHttpTransport.java NioHttpTransport.java Metrics.java ResponseCache.java Compression.java MessageCursor.java BufferPool.java JsonStreamWriter.java JsonReader.java MessageLog.java GroupCommitWriter.java MessageStore.java MessageSegments.java MessageRepository.java MemoryMessageRepository.java FileMessageRepository.java JdbcConnectionPool.java JdbcMessageRepository.java WriteBehindMessageRepository.java MessageBinaryFormat.java MessageIdGenerator.java CreateTimeFormat.java MessageSearchIndex.java MessageStream.java
 
 if %ERRORLEVEL% neq 0 (
     echo 编译失败！请检查Java 8是否正确安装。